@@ -0,0 +1,89 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.Events;
+import me.toddcarter.eventbus.RingBufferDispatcher;
+import me.toddcarter.eventbus.WaitStrategy;
+import me.toddcarter.subscription.Subscription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous posting, measured from submission until every subscriber has handled the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AsyncBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"YIELDING", "PARKING"})
+    public WaitStrategy waitStrategy;
+
+    private final LongAdder handled = new LongAdder();
+    private final BenchmarkEvent[] events = new BenchmarkEvent[BATCH];
+    private Subscription<BenchmarkEvent> subscription;
+    private RingBufferDispatcher dispatcher;
+
+    @Setup
+    public void setup() {
+        subscription = Events.subscribe(BenchmarkEvent.class).handler(event -> handled.increment());
+        dispatcher = Events.getEventBus().ringBuffer()
+                .bufferSize(1 << 14)
+                .waitStrategy(waitStrategy)
+                .build();
+        for (int i = 0; i < BATCH; i++) {
+            events[i] = new BenchmarkEvent();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.close();
+        Events.unregisterListener(subscription);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long callAsync() {
+        long target = handled.sum() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            Events.callAsync(new BenchmarkEvent());
+        }
+        while (handled.sum() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long callAsyncPartitioned() {
+        long target = handled.sum() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            Events.callAsync(new BenchmarkEvent(), i & 63);
+        }
+        while (handled.sum() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long ringBuffer() {
+        long target = handled.sum() + BATCH;
+        for (BenchmarkEvent event : events) {
+            dispatcher.publish(event);
+        }
+        while (handled.sum() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,20 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.event.HandlerList;
+
+public final class BenchmarkEvent extends Event {
+
+    private static final HandlerList handlers = new HandlerList();
+
+    public long value;
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
@@ -0,0 +1,110 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.eventbus.EventBus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Dispatch of several event types whose subscribers use different filters and handlers, so the call sites of the generic loop are megamorphic,
+ * with and without compiled dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompiledDispatchBenchmark {
+
+    @Param({"1", "4", "10"})
+    public int subscribers;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private EventBus eventBus;
+    private TypedEvent[] events;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        EventBus.Builder builder = EventBus.builder().name("compiled-benchmark");
+        if (compiled) {
+            builder.compiledDispatch();
+        }
+        eventBus = builder.build();
+        Consumer<TypedEvent>[] handlers = new Consumer[]{
+                (Consumer<TypedEvent>) event -> event.value++,
+                (Consumer<TypedEvent>) event -> event.value += 2,
+                (Consumer<TypedEvent>) event -> event.value ^= 1,
+                (Consumer<TypedEvent>) event -> event.value += 3,
+                (Consumer<TypedEvent>) event -> event.value--,
+                (Consumer<TypedEvent>) event -> event.value += 5,
+                (Consumer<TypedEvent>) event -> event.value |= 1,
+                (Consumer<TypedEvent>) event -> event.value -= 2
+        };
+        Predicate<TypedEvent>[] filters = new Predicate[]{
+                (Predicate<TypedEvent>) event -> event.value >= 0,
+                (Predicate<TypedEvent>) event -> event.value != -1,
+                (Predicate<TypedEvent>) event -> event.value > -5,
+                (Predicate<TypedEvent>) event -> event.value < Long.MAX_VALUE
+        };
+        events = new TypedEvent[]{new Event0(), new Event1(), new Event2(), new Event3(), new Event4(), new Event5(), new Event6(), new Event7()};
+        for (int type = 0; type < events.length; type++) {
+            Class<TypedEvent> eventClass = (Class<TypedEvent>) events[type].getClass();
+            for (int i = 0; i < subscribers; i++) {
+                eventBus.subscribe(eventClass).filter(filters[(type + i) % filters.length]).handler(handlers[(type + i) % handlers.length]);
+            }
+        }
+    }
+
+    @Benchmark
+    public long fireEvent() {
+        TypedEvent event = events[next++ & 7];
+        event.value = 0;
+        eventBus.callSync(event);
+        return event.value;
+    }
+
+    /**
+     * The event types only live on the benchmark bus, which keeps its own handler lists.
+     */
+    public abstract static class TypedEvent extends Event {
+        public long value;
+
+        @Override
+        public HandlerList getHandlers() {
+            return null;
+        }
+    }
+
+    public static final class Event0 extends TypedEvent {
+    }
+
+    public static final class Event1 extends TypedEvent {
+    }
+
+    public static final class Event2 extends TypedEvent {
+    }
+
+    public static final class Event3 extends TypedEvent {
+    }
+
+    public static final class Event4 extends TypedEvent {
+    }
+
+    public static final class Event5 extends TypedEvent {
+    }
+
+    public static final class Event6 extends TypedEvent {
+    }
+
+    public static final class Event7 extends TypedEvent {
+    }
+}
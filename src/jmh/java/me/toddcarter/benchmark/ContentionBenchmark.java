@@ -0,0 +1,80 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.Events;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.subscription.Subscription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads firing the same event type, with and without concurrent registration churn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContentionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private List<Subscription<BenchmarkEvent>> subscriptions;
+
+    @State(Scope.Thread)
+    public static class ThreadEvent {
+        final BenchmarkEvent event = new BenchmarkEvent();
+    }
+
+    @Setup
+    public void setup() {
+        subscriptions = Subscribers.register(subscribers, 1, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Subscribers.unregister(subscriptions);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long fireSameType_1Thread(ThreadEvent state) {
+        return fire(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long fireSameType_4Threads(ThreadEvent state) {
+        return fire(state);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long fireSameType_16Threads(ThreadEvent state) {
+        return fire(state);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(7)
+    public long churnFire(ThreadEvent state) {
+        return fire(state);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public Subscription<BenchmarkEvent> churnRegister() {
+        Subscription<BenchmarkEvent> subscription = Subscribers.builder(EventPriority.NORMAL, 0).handler(event -> event.value++);
+        Events.unregisterListener(subscription);
+        return subscription;
+    }
+
+    private static long fire(ThreadEvent state) {
+        Events.callSync(state.event);
+        return state.event.value;
+    }
+}
@@ -0,0 +1,71 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.Events;
+import me.toddcarter.event.Event;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.subscription.Subscription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded synchronous dispatch under varying subscriber, filter and priority layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DispatchBenchmark {
+
+    @Param({"0", "1", "10", "100"})
+    public int subscribers;
+
+    @Param({"0", "1", "4"})
+    public int filters;
+
+    @Param({"false", "true"})
+    public boolean spreadPriorities;
+
+    @Param({"false", "true"})
+    public boolean supertypeSubscriber;
+
+    /**
+     * The bus behind {@link Events}, so the supertype subscriber is seen by both benchmarks.
+     */
+    private final EventBus eventBus = Events.getEventBus();
+    private final BenchmarkEvent event = new BenchmarkEvent();
+    private List<Subscription<BenchmarkEvent>> subscriptions;
+    private Subscription<Event> supertypeSubscription;
+
+    @Setup
+    public void setup() {
+        subscriptions = Subscribers.register(subscribers, filters, spreadPriorities);
+        if (supertypeSubscriber) {
+            supertypeSubscription = eventBus.subscribeAll(Event.class, EventPriority.MONITOR).handler(event -> {});
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Subscribers.unregister(subscriptions);
+        if (supertypeSubscription != null) {
+            eventBus.unregisterListener(supertypeSubscription);
+        }
+    }
+
+    @Benchmark
+    public long callSync() {
+        Events.callSync(event);
+        return event.value;
+    }
+
+    @Benchmark
+    public long fireEvent() {
+        eventBus.call(event, false);
+        return event.value;
+    }
+}
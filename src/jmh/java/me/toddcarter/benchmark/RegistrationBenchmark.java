@@ -0,0 +1,62 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.Events;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.subscription.Subscription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registration churn: building, registering, baking and unregistering subscriptions
+ * while a number of other subscribers are already registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RegistrationBenchmark {
+
+    @Param({"0", "100", "1000"})
+    public int existingSubscribers;
+
+    @Param({"0", "4"})
+    public int filters;
+
+    private final HandlerList handlerList = BenchmarkEvent.getHandlerList();
+    private List<Subscription<BenchmarkEvent>> subscriptions;
+
+    @Setup
+    public void setup() {
+        subscriptions = Subscribers.register(existingSubscribers, 0, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Subscribers.unregister(subscriptions);
+    }
+
+    @Benchmark
+    public Subscription<BenchmarkEvent> subscribeAndUnregister() {
+        Subscription<BenchmarkEvent> subscription = Subscribers.builder(EventPriority.NORMAL, filters).handler(event -> event.value++);
+        Events.unregisterListener(subscription);
+        return subscription;
+    }
+
+    @Benchmark
+    public Subscription<?>[] registerAndBake() {
+        Subscription<BenchmarkEvent> subscription = Subscribers.builder(EventPriority.HIGH, filters).handler(event -> event.value++);
+        Subscription<?>[] baked = handlerList.getRegisteredListeners();
+        Events.unregisterListener(subscription);
+        return baked;
+    }
+
+    @Benchmark
+    public Subscription<?>[] getRegisteredListeners() {
+        return handlerList.getRegisteredListeners();
+    }
+}
@@ -0,0 +1,64 @@
+package me.toddcarter.benchmark;
+
+import me.toddcarter.Events;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.subscription.Subscription;
+import me.toddcarter.subscription.SubscriptionBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared set-up helpers for the benchmark states.
+ */
+final class Subscribers {
+
+    private static final EventPriority[] PRIORITIES = EventPriority.values();
+
+    private Subscribers() {
+    }
+
+    /**
+     * Register a number of subscribers to {@link BenchmarkEvent}.
+     *
+     * @param count            the amount of subscribers to register
+     * @param filters          the amount of (always passing) filters per subscriber
+     * @param spreadPriorities spread the subscribers over every priority instead of NORMAL only
+     * @return the registered subscriptions
+     */
+    static List<Subscription<BenchmarkEvent>> register(int count, int filters, boolean spreadPriorities) {
+        List<Subscription<BenchmarkEvent>> subscriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            EventPriority priority = spreadPriorities ? PRIORITIES[i % PRIORITIES.length] : EventPriority.NORMAL;
+            subscriptions.add(builder(priority, filters).handler(event -> event.value++));
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Create a builder for {@link BenchmarkEvent} with the given amount of filters.
+     *
+     * @param priority the priority of the subscription
+     * @param filters  the amount of (always passing) filters
+     * @return the builder
+     */
+    static SubscriptionBuilder<BenchmarkEvent> builder(EventPriority priority, int filters) {
+        SubscriptionBuilder<BenchmarkEvent> builder = Events.subscribe(BenchmarkEvent.class, priority);
+        for (int i = 0; i < filters; i++) {
+            builder.filter(event -> event.value >= 0);
+        }
+        return builder;
+    }
+
+    /**
+     * Unregister every subscription in the list.
+     *
+     * @param subscriptions the subscriptions to unregister
+     */
+    static void unregister(List<Subscription<BenchmarkEvent>> subscriptions) {
+        for (Subscription<BenchmarkEvent> subscription : subscriptions) {
+            Events.unregisterListener(subscription);
+        }
+        subscriptions.clear();
+    }
+}
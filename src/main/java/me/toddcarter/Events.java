@@ -3,16 +3,30 @@ package me.toddcarter;
 import me.toddcarter.event.Event;
 import me.toddcarter.event.EventPriority;
 import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.eventbus.ScheduledCall;
+import me.toddcarter.metrics.MetricsSnapshot;
 import me.toddcarter.subscription.Subscription;
 import me.toddcarter.subscription.SubscriptionBuilder;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public final class Events {
 
     private static final EventBus eventBus = new EventBus();
 
+    /**
+     * Get the default bus, which uses the static handler lists of the event classes.
+     *
+     * @return the default bus
+     */
+    @NotNull
+    public static EventBus getEventBus() {
+        return eventBus;
+    }
 
     /**
      * Initialise a new subscription builder.
@@ -21,7 +35,7 @@ public final class Events {
      * @param priority   the priority of the subscription
      */
     public static <T extends Event> SubscriptionBuilder<T> subscribe(Class<T> eventClass , EventPriority priority) {
-        return new SubscriptionBuilder<>(eventClass, priority);
+        return eventBus.subscribe(eventClass, priority);
     }
 
     /**
@@ -30,16 +44,62 @@ public final class Events {
      * @param eventClass the event class to subscribe to
      */
     public static <T extends Event> SubscriptionBuilder<T> subscribe(Class<T> eventClass) {
-        return new SubscriptionBuilder<>(eventClass, EventPriority.NORMAL);
+        return eventBus.subscribe(eventClass, EventPriority.NORMAL);
+    }
+
+    /**
+     * Initialise a new subscription builder which receives every event that is a subtype of the type.
+     * <p>
+     * The type can be any event class, or an interface implemented by events such as {@link me.toddcarter.event.Cancellable}.
+     *
+     * @param type     the supertype of the events to subscribe to
+     * @param priority the priority of the subscription
+     */
+    public static <T> SubscriptionBuilder<T> subscribeAll(Class<T> type, EventPriority priority) {
+        return eventBus.subscribeAll(type, priority);
+    }
+
+    /**
+     * Initialise a new subscription builder which receives every event that is a subtype of the type.
+     *
+     * @param type the supertype of the events to subscribe to
+     */
+    public static <T> SubscriptionBuilder<T> subscribeAll(Class<T> type) {
+        return subscribeAll(type, EventPriority.NORMAL);
     }
 
     /**
      * Submit the event on a new async thread.
      *
      * @param event the event to call
+     * @return a future completed with the event once every subscriber has been executed
+     */
+    @NotNull
+    public static <T extends Event> CompletableFuture<T> callAsync(@NotNull T event) {
+        return eventBus.callAsync(event);
+    }
+
+    /**
+     * Call an event asynchronously, after every event previously called with an equal key.
+     *
+     * @param event the event to call
+     * @param key   the partition key, events are ordered per key
+     * @return a future completed with the event once every listener has been executed
+     */
+    @NotNull
+    public static <T extends Event> CompletableFuture<T> callAsync(@NotNull T event, Object key) {
+        return eventBus.callAsync(event, key);
+    }
+
+    /**
+     * Submit every event on new async threads.
+     *
+     * @param events the events to call
+     * @return a future completed once every event has been called
      */
-    public static void callAsync(@NotNull Event event) {
-        CompletableFuture.runAsync(() -> eventBus.call(event, true));
+    @NotNull
+    public static CompletableFuture<Void> callAsyncAll(@NotNull Collection<? extends Event> events) {
+        return eventBus.callAsyncAll(events);
     }
 
     /**
@@ -48,7 +108,86 @@ public final class Events {
      * @param event the event to call
      */
     public static void callSync(@NotNull Event event) {
-        eventBus.call(event, false);
+        eventBus.callSync(event);
+    }
+
+    /**
+     * Call a batch of events synchronously, resolving the listeners once per event class.
+     *
+     * @param events the events to call
+     */
+    public static void callSyncBatch(@NotNull Collection<? extends Event> events) {
+        eventBus.callSyncBatch(events);
+    }
+
+    /**
+     * Call a batch of events asynchronously, resolving the listeners once per event class.
+     *
+     * @param events the events to call
+     * @return a future completed once every event has been called
+     */
+    @NotNull
+    public static CompletableFuture<Void> callAsyncBatch(@NotNull Collection<? extends Event> events) {
+        return eventBus.callAsyncBatch(events);
+    }
+
+    /**
+     * Whether any listener could receive events of a class.
+     *
+     * @param eventClass the event class
+     * @return true if there is at least one listener
+     */
+    public static boolean hasListeners(@NotNull Class<? extends Event> eventClass) {
+        return eventBus.hasListeners(eventClass);
+    }
+
+    /**
+     * Build and call an event synchronously only if anyone is listening.
+     *
+     * @param eventClass the event class
+     * @param supplier   builds the event
+     * @return true if the event was built and called
+     */
+    public static <T extends Event> boolean callSync(@NotNull Class<T> eventClass, @NotNull Supplier<? extends T> supplier) {
+        return eventBus.callSync(eventClass, supplier);
+    }
+
+    /**
+     * Build and call an event asynchronously only if anyone is listening.
+     *
+     * @param eventClass the event class
+     * @param supplier   builds the event, on the calling thread
+     * @return a future completed with the event once every listener has been executed, or with null if the event was not built
+     */
+    @NotNull
+    public static <T extends Event> CompletableFuture<T> callAsync(@NotNull Class<T> eventClass, @NotNull Supplier<? extends T> supplier) {
+        return eventBus.callAsync(eventClass, supplier);
+    }
+
+    /**
+     * Call an event after a delay.
+     *
+     * @param event the event to call
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the handle to cancel the call with
+     */
+    @NotNull
+    public static ScheduledCall callLater(@NotNull Event event, long delay, @NotNull TimeUnit unit) {
+        return eventBus.callLater(event, delay, unit);
+    }
+
+    /**
+     * Call an event built by a supplier at a fixed rate.
+     *
+     * @param supplier the supplier of the events
+     * @param period   the period
+     * @param unit     the unit of the period
+     * @return the handle to cancel the calls with
+     */
+    @NotNull
+    public static ScheduledCall callEvery(@NotNull Supplier<? extends Event> supplier, long period, @NotNull TimeUnit unit) {
+        return eventBus.callEvery(supplier, period, unit);
     }
 
     /**
@@ -56,16 +195,77 @@ public final class Events {
      *
      * @param listener the listener to register
      */
-    public static <T extends Event> void registerListener(@NotNull Subscription<T> listener) {
+    public static void registerListener(@NotNull Subscription<?> listener) {
         eventBus.registerListener(listener);
     }
 
+    /**
+     * Register a collection of listeners, publishing a single snapshot per handler list.
+     * <p>
+     * If a listener is already registered, none of the listeners are registered.
+     *
+     * @param listeners the listeners to register
+     * @throws IllegalStateException if a listener is already registered or given twice
+     */
+    public static void registerAll(@NotNull Collection<? extends Subscription<?>> listeners) {
+        eventBus.registerAll(listeners);
+    }
+
+    /**
+     * Register every {@link me.toddcarter.subscription.Subscribe} method of a listener object.
+     *
+     * @param listener the listener object
+     * @throws IllegalArgumentException if the listener has no {@link me.toddcarter.subscription.Subscribe} methods
+     */
+    public static void register(@NotNull Object listener) {
+        eventBus.register(listener);
+    }
+
+    /**
+     * Unregister every listener of a listener object.
+     *
+     * @param listener the listener object
+     * @throws IllegalArgumentException if the listener has no {@link me.toddcarter.subscription.Subscribe} methods
+     */
+    public static void unregister(@NotNull Object listener) {
+        eventBus.unregister(listener);
+    }
+
     /**
      * Unregister a listener.
      *
      * @param listener the listener to unregister
      */
-    public static <T extends Event> void unregisterListener(@NotNull Subscription<T> listener) {
+    public static void unregisterListener(@NotNull Subscription<?> listener) {
         eventBus.unregisterListener(listener);
     }
+
+    /**
+     * Unregister every listener of an owner.
+     *
+     * @param owner the owner of the listeners
+     * @return the amount of listeners unregistered
+     */
+    public static int unregisterOwner(@NotNull Object owner) {
+        return eventBus.unregisterOwner(owner);
+    }
+
+    /**
+     * Start or stop recording dispatch metrics.
+     *
+     * @param enabled true to record metrics
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        eventBus.setMetricsEnabled(enabled);
+    }
+
+    /**
+     * Take a snapshot of the dispatch metrics.
+     *
+     * @return the snapshot, empty if metrics are disabled
+     */
+    @NotNull
+    public static MetricsSnapshot getMetrics() {
+        return eventBus.getMetrics();
+    }
 }
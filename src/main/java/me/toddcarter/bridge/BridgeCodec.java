@@ -0,0 +1,87 @@
+package me.toddcarter.bridge;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.journal.EventSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The event classes shared over a bridge and their serializers.
+ * <p>
+ * Both sides of a bridge must register the same classes under the same type ids, before the sender or receiver is created.
+ */
+public final class BridgeCodec {
+
+    private final Map<Class<? extends Event>, Registration<?>> byClass = new ConcurrentHashMap<>();
+    private final Map<Integer, Registration<?>> byTypeId = new ConcurrentHashMap<>();
+
+    /**
+     * Share the events of a class.
+     * <p>
+     * Subclasses of the event class are not shared unless they are registered themselves.
+     *
+     * @param typeId     the id identifying the event class on the wire
+     * @param eventClass the event class
+     * @param serializer the serializer
+     */
+    public <T extends Event> BridgeCodec register(int typeId, @NotNull Class<T> eventClass, @NotNull EventSerializer<T> serializer) {
+        Objects.requireNonNull(eventClass, "eventClass");
+        Objects.requireNonNull(serializer, "serializer");
+        Registration<T> registration = new Registration<>(typeId, serializer);
+        if (byTypeId.putIfAbsent(typeId, registration) != null) {
+            throw new IllegalArgumentException("Type id " + typeId + " is already registered");
+        }
+        byClass.put(eventClass, registration);
+        return this;
+    }
+
+    /**
+     * Get the registered event classes.
+     *
+     * @return the event classes
+     */
+    public Set<Class<? extends Event>> getEventClasses() {
+        return Collections.unmodifiableSet(byClass.keySet());
+    }
+
+    int typeId(Class<?> eventClass) {
+        Registration<?> registration = byClass.get(eventClass);
+        if (registration == null) {
+            throw new IllegalArgumentException("No serializer is registered for " + eventClass.getName());
+        }
+        return registration.typeId;
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] encode(Event event) {
+        Registration<Event> registration = (Registration<Event>) byClass.get(event.getClass());
+        if (registration == null) {
+            throw new IllegalArgumentException("No serializer is registered for " + event.getClass().getName());
+        }
+        return registration.serializer.serialize(event);
+    }
+
+    Event decode(int typeId, byte[] data) {
+        Registration<?> registration = byTypeId.get(typeId);
+        if (registration == null) {
+            throw new IllegalArgumentException("No serializer is registered for type id " + typeId);
+        }
+        return registration.serializer.deserialize(data);
+    }
+
+    private static final class Registration<T extends Event> {
+
+        final int typeId;
+        final EventSerializer<T> serializer;
+
+        Registration(int typeId, EventSerializer<T> serializer) {
+            this.typeId = typeId;
+            this.serializer = serializer;
+        }
+    }
+}
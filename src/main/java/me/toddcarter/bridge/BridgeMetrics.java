@@ -0,0 +1,91 @@
+package me.toddcarter.bridge;
+
+import me.toddcarter.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency counters of one side of a bridge, the counters of the other side stay at zero.
+ */
+public final class BridgeMetrics {
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void frame(int events, int bytes) {
+        this.events.add(events);
+        this.frames.increment();
+        this.bytes.add(bytes);
+    }
+
+    void latency(long nanos) {
+        latency.record(nanos);
+    }
+
+    void reconnected() {
+        reconnects.increment();
+    }
+
+    void dropped(int events) {
+        dropped.add(events);
+    }
+
+    /**
+     * Get the amount of events sent or received.
+     *
+     * @return the amount of events
+     */
+    public long getEvents() {
+        return events.sum();
+    }
+
+    /**
+     * Get the amount of frames sent or received.
+     *
+     * @return the amount of frames
+     */
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Get the amount of bytes sent or received.
+     *
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Get the amount of times the sender connected again after losing its connection.
+     *
+     * @return the amount of reconnects
+     */
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Get the amount of events the sender dropped because it was closed while disconnected,
+     * or the receiver dropped because they could not be decoded.
+     *
+     * @return the amount of dropped events
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Get the time from an event being called until its frame has been written, or from a frame being read until its events have been called.
+     *
+     * @return the latency
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+}
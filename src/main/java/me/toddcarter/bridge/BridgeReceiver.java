@@ -0,0 +1,246 @@
+package me.toddcarter.bridge;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.eventbus.EventBus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Receives frames from {@link BridgeSender}s and calls their events on a local bus.
+ * <p>
+ * Connections are served by a single selector thread, the events of each frame are called on it as a batch.
+ * Events received from a bridge are not sent out again by the senders on the same bus.
+ */
+public final class BridgeReceiver implements AutoCloseable {
+
+    private static final ThreadLocal<Boolean> RECEIVING = new ThreadLocal<>();
+
+    private final EventBus bus;
+    private final BridgeCodec codec;
+    private final int maxFrameSize;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private BridgeReceiver(EventBus bus, InetSocketAddress address, BridgeCodec codec, int maxFrameSize) throws IOException {
+        this.bus = bus;
+        this.codec = codec;
+        this.maxFrameSize = maxFrameSize;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "bridge-receiver-" + server.getLocalAddress());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Listen for senders on an address.
+     *
+     * @param bus          the bus to call the received events on
+     * @param address      the address to listen on, port 0 picks a free port
+     * @param codec        the event classes to receive
+     * @param maxFrameSize the largest frame accepted, must be at least the largest frame of the senders
+     * @return the receiver
+     * @throws UncheckedIOException if the address could not be bound
+     */
+    @NotNull
+    public static BridgeReceiver bind(@NotNull EventBus bus, @NotNull InetSocketAddress address, @NotNull BridgeCodec codec, int maxFrameSize) {
+        Objects.requireNonNull(bus, "bus");
+        Objects.requireNonNull(address, "address");
+        Objects.requireNonNull(codec, "codec");
+        try {
+            return new BridgeReceiver(bus, address, codec, maxFrameSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Listen for senders on an address, accepting frames of up to 64 KiB.
+     *
+     * @param bus     the bus to call the received events on
+     * @param address the address to listen on, port 0 picks a free port
+     * @param codec   the event classes to receive
+     * @return the receiver
+     */
+    @NotNull
+    public static BridgeReceiver bind(@NotNull EventBus bus, @NotNull InetSocketAddress address, @NotNull BridgeCodec codec) {
+        return bind(bus, address, codec, 64 << 10);
+    }
+
+    /**
+     * Whether the current thread is calling events received from a bridge.
+     *
+     * @return true while calling received events
+     */
+    static boolean isReceiving() {
+        return RECEIVING.get() != null;
+    }
+
+    /**
+     * Get the address the receiver is listening on.
+     *
+     * @return the address
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public BridgeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stop listening and close every connection.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        RECEIVING.set(Boolean.TRUE);
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        try {
+                            read(key);
+                        } catch (RuntimeException e) {
+                            // only drop the connection the frame came from
+                            e.printStackTrace();
+                            closeQuietly(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(maxFrameSize + 4));
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try {
+            if (channel.read(buffer) < 0) {
+                // an incomplete frame left in the buffer is sent again by the sender after reconnecting
+                closeQuietly(key);
+                return;
+            }
+        } catch (IOException e) {
+            closeQuietly(key);
+            return;
+        }
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 4 || length > maxFrameSize) {
+                // not a frame of a sender, stop reading from the connection
+                closeQuietly(key);
+                return;
+            }
+            if (buffer.remaining() < length + 4) {
+                break;
+            }
+            long start = System.nanoTime();
+            int end = buffer.position() + 4 + length;
+            buffer.position(buffer.position() + 4);
+            int count = buffer.getInt();
+            if (count < 0 || count > (end - buffer.position()) / 8) {
+                closeQuietly(key);
+                return;
+            }
+            List<Event> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (end - buffer.position() < 8) {
+                    closeQuietly(key);
+                    return;
+                }
+                int typeId = buffer.getInt();
+                int size = buffer.getInt();
+                if (size < 0 || size > end - buffer.position()) {
+                    // the record does not fit in its frame
+                    closeQuietly(key);
+                    return;
+                }
+                byte[] payload = new byte[size];
+                buffer.get(payload);
+                try {
+                    events.add(codec.decode(typeId, payload));
+                } catch (RuntimeException e) {
+                    metrics.dropped(1);
+                }
+            }
+            buffer.position(end);
+            bus.callSyncBatch(events);
+            metrics.latency(System.nanoTime() - start);
+            metrics.frame(events.size(), length + 4);
+        }
+        buffer.compact();
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package me.toddcarter.bridge;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.subscription.Subscription;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the events of the classes registered to a codec from a bus to a {@link BridgeReceiver} in another JVM.
+ * <p>
+ * Events are queued by a MONITOR subscription and written in batched frames by a dedicated thread.
+ * The queue is bounded, so callers wait while the receiver or the connection cannot keep up.
+ * A frame is written again in full after reconnecting, so an event may be received twice if the connection was lost mid frame.
+ * <p>
+ * Frames are laid out as length, event count and records of type id, length and payload.
+ */
+public final class BridgeSender implements AutoCloseable {
+
+    private final InetSocketAddress address;
+    private final BridgeCodec codec;
+    private final int maxFrameSize;
+    private final long reconnectDelayNanos;
+    private final long maxReconnectDelayNanos;
+    private final BlockingQueue<Pending> queue;
+    private final ByteBuffer frame;
+    private final List<Pending> batch = new ArrayList<>();
+    private final List<Subscription<?>> subscriptions = new ArrayList<>();
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    private final EventBus bus;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * The connection, only accessed by the writer thread.
+     */
+    private SocketChannel channel;
+    private boolean connectedBefore;
+
+    private BridgeSender(Builder builder) {
+        this.bus = builder.bus;
+        this.address = builder.address;
+        this.codec = builder.codec;
+        this.maxFrameSize = builder.maxFrameSize;
+        this.reconnectDelayNanos = builder.reconnectDelayNanos;
+        this.maxReconnectDelayNanos = Math.max(builder.reconnectDelayNanos, TimeUnit.SECONDS.toNanos(5));
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.frame = ByteBuffer.allocateDirect(builder.maxFrameSize);
+        for (Class<? extends Event> eventClass : codec.getEventClasses()) {
+            subscriptions.add(bus.subscribe(eventClass, EventPriority.MONITOR).handler(this::enqueue));
+        }
+        this.writer = new Thread(this::runWriter, "bridge-sender-" + address);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Create a builder for a sender connecting to a receiver.
+     *
+     * @param bus     the bus to send the events of
+     * @param address the address of the receiver
+     * @param codec   the event classes to send
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder(@NotNull EventBus bus, @NotNull InetSocketAddress address, @NotNull BridgeCodec codec) {
+        return new Builder(bus, address, codec);
+    }
+
+    public BridgeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unsubscribe from the bus, send the queued events if connected and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        for (Subscription<?> subscription : subscriptions) {
+            bus.unregisterListener(subscription);
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeChannel();
+    }
+
+    private void enqueue(Event event) {
+        if (BridgeReceiver.isReceiving()) {
+            // do not send events received from a bridge back out
+            return;
+        }
+        byte[] payload = codec.encode(event);
+        if (payload.length + 16 > maxFrameSize) {
+            throw new IllegalArgumentException("The serialized event is larger than a frame: " + payload.length + " bytes");
+        }
+        try {
+            queue.put(new Pending(codec.typeId(event.getClass()), payload, System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.dropped(1);
+        }
+    }
+
+    private void runWriter() {
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            fill(first);
+            if (!send()) {
+                metrics.dropped(batch.size());
+                dropQueued();
+                return;
+            }
+            long now = System.nanoTime();
+            for (Pending pending : batch) {
+                metrics.latency(now - pending.enqueueTime);
+            }
+            metrics.frame(batch.size(), frame.limit());
+        }
+    }
+
+    /**
+     * Fill the frame with the first event and as many queued events as fit.
+     */
+    private void fill(Pending first) {
+        batch.clear();
+        frame.clear();
+        frame.position(8);
+        Pending pending = first;
+        while (pending != null) {
+            frame.putInt(pending.typeId);
+            frame.putInt(pending.payload.length);
+            frame.put(pending.payload);
+            batch.add(pending);
+            Pending next = queue.peek();
+            if (next == null || frame.remaining() < next.payload.length + 8) {
+                break;
+            }
+            pending = queue.poll();
+        }
+        frame.putInt(0, frame.position() - 4);
+        frame.putInt(4, batch.size());
+        frame.flip();
+    }
+
+    /**
+     * Write the frame, reconnecting until it has been written or the sender is closed while disconnected.
+     *
+     * @return false if the frame could not be written
+     */
+    private boolean send() {
+        long delay = reconnectDelayNanos;
+        while (true) {
+            try {
+                if (channel == null) {
+                    connect();
+                }
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                return true;
+            } catch (IOException e) {
+                closeChannel();
+                frame.rewind();
+                if (!running) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return false;
+                }
+                delay = Math.min(delay * 2, maxReconnectDelayNanos);
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.channel = channel;
+        if (connectedBefore) {
+            metrics.reconnected();
+        }
+        connectedBefore = true;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private void dropQueued() {
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        metrics.dropped(remaining.size());
+    }
+
+    private static final class Pending {
+
+        final int typeId;
+        final byte[] payload;
+        final long enqueueTime;
+
+        Pending(int typeId, byte[] payload, long enqueueTime) {
+            this.typeId = typeId;
+            this.payload = payload;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    public static final class Builder {
+
+        private final EventBus bus;
+        private final InetSocketAddress address;
+        private final BridgeCodec codec;
+        private int capacity = 8192;
+        private int maxFrameSize = 64 << 10;
+        private long reconnectDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+
+        private Builder(EventBus bus, InetSocketAddress address, BridgeCodec codec) {
+            this.bus = Objects.requireNonNull(bus, "bus");
+            this.address = Objects.requireNonNull(address, "address");
+            this.codec = Objects.requireNonNull(codec, "codec");
+        }
+
+        /**
+         * Set the amount of events that can be queued before callers wait, 8192 by default.
+         *
+         * @param capacity the capacity of the queue
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity < 1");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Set the largest frame written at once, 64 KiB by default.
+         *
+         * @param maxFrameSize the size in bytes
+         */
+        public Builder maxFrameSize(int maxFrameSize) {
+            if (maxFrameSize < 64) {
+                throw new IllegalArgumentException("maxFrameSize < 64");
+            }
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Set the delay before the first reconnect attempt, doubled on every failed attempt up to 5 seconds. 50 milliseconds by default.
+         *
+         * @param delay    the delay
+         * @param timeUnit the time unit
+         */
+        public Builder reconnectDelay(long delay, @NotNull TimeUnit timeUnit) {
+            Objects.requireNonNull(timeUnit, "timeUnit");
+            if (delay < 1) {
+                throw new IllegalArgumentException("delay < 1");
+            }
+            this.reconnectDelayNanos = timeUnit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Subscribe to the bus and start sending.
+         *
+         * @return the sender
+         */
+        @NotNull
+        public BridgeSender build() {
+            return new BridgeSender(this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package me.toddcarter.event;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A pool of recyclable events, kept per thread so acquiring and recycling never contend.
+ * <p>
+ * An event is recycled into the pool of the thread releasing it, so events released on another thread,
+ * such as by a ring buffer consumer, move to that thread's pool. Events over the capacity of a thread are left to the garbage collector.
+ *
+ * @param <T> the event class
+ */
+public final class EventPool<T extends PoolableEvent> {
+
+    private final Supplier<T> factory;
+    private final int capacity;
+    private final ThreadLocal<Stack> stacks;
+
+    /**
+     * Create a pool.
+     *
+     * @param factory  creates a new event when the pool of the thread is empty
+     * @param capacity the most events kept per thread
+     */
+    public EventPool(@NotNull Supplier<T> factory, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.factory = Objects.requireNonNull(factory, "factory");
+        this.capacity = capacity;
+        this.stacks = ThreadLocal.withInitial(Stack::new);
+    }
+
+    /**
+     * Take an event from the pool of the current thread, or create one if it is empty.
+     *
+     * @return an event with a single reference
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        Stack stack = stacks.get();
+        T event;
+        if (stack.size > 0) {
+            event = (T) stack.events[--stack.size];
+            stack.events[stack.size] = null;
+            event.acquired();
+        } else {
+            event = factory.get();
+            event.pool = this;
+        }
+        return event;
+    }
+
+    void recycle(PoolableEvent event) {
+        Stack stack = stacks.get();
+        if (stack.size < stack.events.length) {
+            stack.events[stack.size++] = event;
+        }
+    }
+
+    private final class Stack {
+        final PoolableEvent[] events = new PoolableEvent[capacity];
+        int size;
+    }
+}
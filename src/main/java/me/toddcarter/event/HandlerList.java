@@ -1,20 +1,38 @@
 package me.toddcarter.event;
 
 import me.toddcarter.subscription.Subscription;
+import me.toddcarter.timer.HashedWheelTimer;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HandlerList {
 
+    private static final EventPriority[] PRIORITIES = EventPriority.values();
+    private static final Subscription<?>[] NO_HANDLERS = new Subscription<?>[0];
+    private static final long COMPACTION_DELAY_MILLIS = 50;
+
+    /**
+     * The current immutable snapshot of handlers, replaced on every change.
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
     /**
-     * The list of handlers.
+     * Every registered handler, only accessed while holding the lock of this list.
      */
-    private volatile Subscription<?>[] handlers = null;
+    private final Set<Subscription<?>> registered = Collections.newSetFromMap(new IdentityHashMap<>());
 
     /**
-     * Unbaked list of handlers.
+     * The amount of expired handlers that have not been compacted out of the snapshot yet.
      */
-    private final EnumMap<EventPriority, ArrayList<Subscription<?>>> handlerslots;
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    /**
+     * Whether a compaction of the tombstones has been scheduled on the shared timer.
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
 
     /**
      * List of all handlers
@@ -38,12 +56,7 @@ public class HandlerList {
     public static void unregisterAll() {
         synchronized (allLists) {
             for (HandlerList h : allLists) {
-                synchronized (h) {
-                    for (List<Subscription<?>> list : h.handlerslots.values()) {
-                        list.clear();
-                    }
-                    h.handlers = null;
-                }
+                h.clear();
             }
         }
     }
@@ -67,13 +80,34 @@ public class HandlerList {
      * The HandlerList is then added to meta-list for use in bakeAll()
      */
     public HandlerList() {
-        handlerslots = new EnumMap<EventPriority, ArrayList<Subscription<?>>>(EventPriority.class);
-        for (EventPriority o : EventPriority.values()) {
-            handlerslots.put(o, new ArrayList<Subscription<?>>());
+        this(true);
+    }
+
+    /**
+     * Create a new handler list.
+     *
+     * @param global whether to add the list to the meta-list for use in bakeAll() and unregisterAll()
+     */
+    public HandlerList(boolean global) {
+        if (global) {
+            synchronized (allLists) {
+                allLists.add(this);
+            }
         }
-        synchronized (allLists) {
-            allLists.add(this);
+    }
+
+    /**
+     * Unregister every listener of this list.
+     */
+    public synchronized void clear() {
+        for (Subscription<?> subscription : registered) {
+            if (subscription.getHandlerList() == this) {
+                subscription.bind(null);
+            }
         }
+        registered.clear();
+        tombstones.set(0);
+        snapshot = Snapshot.EMPTY;
     }
 
     /**
@@ -82,21 +116,34 @@ public class HandlerList {
      * @param subscription listener to register
      */
     public synchronized void register(Subscription<?> subscription) {
-        if (handlerslots.get(subscription.getPriority()).contains(subscription))
+        if (!registered.add(subscription))
             throw new IllegalStateException("This listener is already registered to priority " + subscription.getPriority().toString());
-        handlers = null;
-        handlerslots.get(subscription.getPriority()).add(subscription);
+        snapshot = compacted().with(subscription);
+        subscription.bind(this);
     }
 
     /**
-     * Register a collection of new listeners
+     * Register a collection of new listeners, publishing a single snapshot
      *
      * @param subscriptions listeners to register
      */
-    public void registerAll(Collection<Subscription<?>> subscriptions) {
-        for (Subscription<?> listener : subscriptions) {
-            register(listener);
+    public synchronized void registerAll(Collection<Subscription<?>> subscriptions) {
+        Subscription<?>[][] slots = compacted().copySlots();
+        List<Subscription<?>> added = new ArrayList<>(subscriptions.size());
+        for (Subscription<?> subscription : subscriptions) {
+            if (!registered.add(subscription)) {
+                for (Subscription<?> undo : added) {
+                    registered.remove(undo);
+                    undo.bind(null);
+                }
+                throw new IllegalStateException("This listener is already registered to priority " + subscription.getPriority().toString());
+            }
+            added.add(subscription);
+            subscription.bind(this);
+            int slot = subscription.getPriority().getSlot();
+            slots[slot] = append(slots[slot], subscription);
         }
+        snapshot = new Snapshot(slots);
     }
 
     /**
@@ -105,28 +152,71 @@ public class HandlerList {
      * @param listener listener to remove
      */
     public synchronized void unregister(Subscription<?> listener) {
-        boolean changed = false;
-        for (List<Subscription<?>> list : handlerslots.values()) {
-            for (ListIterator<Subscription<?>> i = list.listIterator(); i.hasNext();) {
-                if (i.next().equals(listener)) {
-                    i.remove();
-                    changed = true;
+        if (registered.remove(listener)) {
+            if (listener.getHandlerList() == this) {
+                listener.bind(null);
+            }
+            snapshot = compacted().without(listener);
+        } else if (tombstones.get() > 0) {
+            snapshot = compacted();
+        }
+    }
+
+    /**
+     * Remove a collection of listeners, publishing a single snapshot
+     *
+     * @param listeners listeners to remove
+     */
+    public synchronized void unregisterAll(Collection<? extends Subscription<?>> listeners) {
+        Set<Subscription<?>> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Subscription<?> listener : listeners) {
+            if (registered.remove(listener)) {
+                if (listener.getHandlerList() == this) {
+                    listener.bind(null);
                 }
+                removed.add(listener);
+            }
+        }
+        if (!removed.isEmpty()) {
+            snapshot = compacted().without(removed);
+        } else if (tombstones.get() > 0) {
+            snapshot = compacted();
+        }
+    }
+
+    /**
+     * Mark an expired listener for removal.
+     * <p>
+     * The listener is skipped until it is compacted out of the baked handlers,
+     * which happens in one batch for every tombstone on the next bake or change to this list,
+     * or shortly after on the shared timer if the list is not baked before then.
+     *
+     * @param listener the expired listener
+     */
+    public void tombstone(Subscription<?> listener) {
+        if (!listener.isActive()) {
+            tombstones.incrementAndGet();
+            if (compactionScheduled.compareAndSet(false, true)) {
+                HashedWheelTimer.shared().newTimeout(timeout -> {
+                    compactionScheduled.set(false);
+                    bake();
+                }, COMPACTION_DELAY_MILLIS, TimeUnit.MILLISECONDS);
             }
         }
-        if (changed) handlers = null;
     }
 
     /**
-     * Bake HashMap and ArrayLists to 2d array
+     * Bake the handlers, removing every expired listener.
+     * <p>
+     * Handlers are baked whenever they change, so this only has to compact tombstoned listeners.
      */
-    public synchronized void bake() {
-        if (handlers != null) return; // don't re-bake when still valid
-        List<Subscription<?>> entries = new ArrayList<Subscription<?>>();
-        for (Map.Entry<EventPriority, ArrayList<Subscription<?>>> entry : handlerslots.entrySet()) {
-            entries.addAll(entry.getValue());
+    public void bake() {
+        if (tombstones.get() == 0) return; // nothing expired since the last bake
+        synchronized (this) {
+            if (tombstones.get() > 0) {
+                snapshot = compacted();
+            }
         }
-        handlers = entries.toArray(new Subscription<?>[entries.size()]);
     }
 
     /**
@@ -135,9 +225,57 @@ public class HandlerList {
      * @return the array of registered listeners
      */
     public Subscription<?>[] getRegisteredListeners() {
-        Subscription<?>[] handlers;
-        while ((handlers = this.handlers) == null) bake(); // This prevents fringe cases of returning null
-        return handlers;
+        return snapshot.handlers;
+    }
+
+    /**
+     * Whether any listener is registered, a single volatile read.
+     *
+     * @return true if there is at least one listener
+     */
+    public boolean hasListeners() {
+        return snapshot.handlers.length > 0;
+    }
+
+    /**
+     * Get the baked listeners that can match an event.
+     * <p>
+     * Keyed listeners are looked up in the key index and only those whose key matches the event are returned,
+     * merged with the unkeyed listeners in dispatch order.
+     *
+     * @param event the event
+     * @return the array of listeners to execute
+     */
+    public Subscription<?>[] getListeners(Object event) {
+        return snapshot.index.getListeners(event);
+    }
+
+    /**
+     * Get the key index of the baked handlers.
+     *
+     * @return the index, rebuilt whenever the handlers change
+     */
+    public KeyIndex getKeyIndex() {
+        return snapshot.index;
+    }
+
+    /**
+     * Whether any listener of this list is keyed.
+     *
+     * @return true if listeners are routed through a key index
+     */
+    public boolean isIndexed() {
+        return snapshot.index.isIndexed();
+    }
+
+    /**
+     * Get the baked registered listeners of a single priority
+     *
+     * @param priority the priority
+     * @return the array of registered listeners with the priority
+     */
+    public Subscription<?>[] getRegisteredListeners(EventPriority priority) {
+        return snapshot.slots[priority.getSlot()];
     }
 
     /**
@@ -151,4 +289,140 @@ public class HandlerList {
             return (ArrayList<HandlerList>) allLists.clone();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the current snapshot without any expired listeners, must be called while holding the lock of this list.
+     *
+     * @return the compacted snapshot
+     */
+    private Snapshot compacted() {
+        if (tombstones.getAndSet(0) == 0) {
+            return snapshot;
+        }
+        registered.removeIf(subscription -> {
+            if (subscription.isActive()) {
+                return false;
+            }
+            if (subscription.getHandlerList() == this) {
+                subscription.bind(null);
+            }
+            return true;
+        });
+        return snapshot.withoutInactive();
+    }
+
+    private static Subscription<?>[] append(Subscription<?>[] array, Subscription<?> subscription) {
+        Subscription<?>[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = subscription;
+        return copy;
+    }
+
+    /**
+     * Immutable handlers, bucketed by priority and flattened in priority order.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(emptySlots());
+
+        final Subscription<?>[][] slots;
+        final Subscription<?>[] handlers;
+        final KeyIndex index;
+
+        Snapshot(Subscription<?>[][] slots) {
+            this.slots = slots;
+            int size = 0;
+            for (Subscription<?>[] slot : slots) {
+                size += slot.length;
+            }
+            Subscription<?>[] handlers = size == 0 ? NO_HANDLERS : new Subscription<?>[size];
+            int offset = 0;
+            for (Subscription<?>[] slot : slots) {
+                System.arraycopy(slot, 0, handlers, offset, slot.length);
+                offset += slot.length;
+            }
+            this.handlers = handlers;
+            this.index = KeyIndex.build(handlers);
+        }
+
+        Snapshot with(Subscription<?> subscription) {
+            Subscription<?>[][] slots = copySlots();
+            int slot = subscription.getPriority().getSlot();
+            slots[slot] = append(slots[slot], subscription);
+            return new Snapshot(slots);
+        }
+
+        Snapshot without(Subscription<?> subscription) {
+            int slot = subscription.getPriority().getSlot();
+            Subscription<?>[] current = this.slots[slot];
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscription) {
+                    Subscription<?>[] removed = current.length == 1 ? NO_HANDLERS : new Subscription<?>[current.length - 1];
+                    System.arraycopy(current, 0, removed, 0, i);
+                    System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                    Subscription<?>[][] slots = copySlots();
+                    slots[slot] = removed;
+                    return new Snapshot(slots);
+                }
+            }
+            return this;
+        }
+
+        Snapshot without(Set<Subscription<?>> removed) {
+            Subscription<?>[][] slots = copySlots();
+            for (int slot = 0; slot < slots.length; slot++) {
+                int kept = 0;
+                for (Subscription<?> subscription : slots[slot]) {
+                    if (!removed.contains(subscription)) {
+                        kept++;
+                    }
+                }
+                if (kept == slots[slot].length) {
+                    continue;
+                }
+                Subscription<?>[] remaining = kept == 0 ? NO_HANDLERS : new Subscription<?>[kept];
+                int i = 0;
+                for (Subscription<?> subscription : slots[slot]) {
+                    if (!removed.contains(subscription)) {
+                        remaining[i++] = subscription;
+                    }
+                }
+                slots[slot] = remaining;
+            }
+            return new Snapshot(slots);
+        }
+
+        Snapshot withoutInactive() {
+            Subscription<?>[][] slots = copySlots();
+            for (int slot = 0; slot < slots.length; slot++) {
+                int active = 0;
+                for (Subscription<?> subscription : slots[slot]) {
+                    if (subscription.isActive()) {
+                        active++;
+                    }
+                }
+                if (active == slots[slot].length) {
+                    continue;
+                }
+                Subscription<?>[] compacted = active == 0 ? NO_HANDLERS : new Subscription<?>[active];
+                int i = 0;
+                for (Subscription<?> subscription : slots[slot]) {
+                    if (subscription.isActive()) {
+                        compacted[i++] = subscription;
+                    }
+                }
+                slots[slot] = compacted;
+            }
+            return new Snapshot(slots);
+        }
+
+        Subscription<?>[][] copySlots() {
+            return slots.clone();
+        }
+
+        private static Subscription<?>[][] emptySlots() {
+            Subscription<?>[][] slots = new Subscription<?>[PRIORITIES.length][];
+            Arrays.fill(slots, NO_HANDLERS);
+            return slots;
+        }
+    }
+}
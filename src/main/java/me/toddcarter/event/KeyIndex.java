@@ -0,0 +1,214 @@
+package me.toddcarter.event;
+
+import me.toddcarter.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An immutable hash index of the keyed subscriptions of baked handlers, so an event is only dispatched to the keyed subscriptions matching its key.
+ * <p>
+ * Keyed subscriptions are indexed per key extractor instance. With a single extractor, the subscriptions of every key are merged with the unkeyed
+ * subscriptions when the index is built, so routing an event does not allocate. The matches of several extractors are merged back into dispatch order per event.
+ */
+public final class KeyIndex {
+
+    private final Subscription<?>[] handlers;
+    private final Index[] indexes;
+    private final Entries unkeyed;
+
+    private KeyIndex(Subscription<?>[] handlers, Index[] indexes, Entries unkeyed) {
+        this.handlers = handlers;
+        this.indexes = indexes;
+        this.unkeyed = unkeyed;
+    }
+
+    /**
+     * Build the index of baked handlers.
+     *
+     * @param handlers the handlers in dispatch order
+     * @return the index
+     */
+    @SuppressWarnings("unchecked")
+    public static KeyIndex build(Subscription<?>[] handlers) {
+        Map<Function<?, ?>, Map<Object, Builder>> byExtractor = null;
+        Map<Function<?, ?>, Builder> allByExtractor = null;
+        Builder unkeyedBuilder = new Builder();
+        for (int i = 0; i < handlers.length; i++) {
+            Subscription<?> subscription = handlers[i];
+            if (!subscription.isKeyed()) {
+                unkeyedBuilder.add(subscription, i);
+                continue;
+            }
+            if (byExtractor == null) {
+                byExtractor = new IdentityHashMap<>();
+                allByExtractor = new IdentityHashMap<>();
+            }
+            Function<?, ?> extractor = subscription.getKeyExtractor();
+            byExtractor.computeIfAbsent(extractor, e -> new HashMap<>())
+                    .computeIfAbsent(subscription.getKey(), k -> new Builder())
+                    .add(subscription, i);
+            allByExtractor.computeIfAbsent(extractor, e -> new Builder()).add(subscription, i);
+        }
+        if (byExtractor == null) {
+            return new KeyIndex(handlers, new Index[0], null);
+        }
+        Entries unkeyed = unkeyedBuilder.build();
+        // with a single extractor the routes can include the unkeyed subscriptions up front
+        Entries base = byExtractor.size() == 1 ? unkeyed : Entries.EMPTY;
+        Index[] indexes = new Index[byExtractor.size()];
+        int i = 0;
+        for (Map.Entry<Function<?, ?>, Map<Object, Builder>> index : byExtractor.entrySet()) {
+            Map<Object, Entries> entries = new HashMap<>();
+            for (Map.Entry<Object, Builder> entry : index.getValue().entrySet()) {
+                entries.put(entry.getKey(), base.merge(entry.getValue().build()));
+            }
+            Entries all = base.merge(allByExtractor.get(index.getKey()).build());
+            indexes[i++] = new Index((Function<Object, ?>) index.getKey(), entries, all, base);
+        }
+        return new KeyIndex(handlers, indexes, unkeyed);
+    }
+
+    /**
+     * Whether any of the handlers is keyed.
+     *
+     * @return true if events are routed by key
+     */
+    public boolean isIndexed() {
+        return indexes.length > 0;
+    }
+
+    /**
+     * Get every handler, keyed or not.
+     *
+     * @return the handlers in dispatch order
+     */
+    public Subscription<?>[] getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the unkeyed handlers and the keyed handlers whose key matches the key of an event.
+     * <p>
+     * If a key extractor throws, every subscription using it is returned so their own key filter reports the error.
+     *
+     * @param event the event
+     * @return the handlers in dispatch order
+     */
+    public Subscription<?>[] getListeners(Object event) {
+        Index[] indexes = this.indexes;
+        if (indexes.length == 0) {
+            return handlers;
+        }
+        if (indexes.length == 1) {
+            return indexes[0].get(event).subscriptions;
+        }
+        Entries listeners = unkeyed;
+        for (Index index : indexes) {
+            listeners = listeners.merge(index.get(event));
+        }
+        return listeners.subscriptions;
+    }
+
+    /**
+     * The keyed subscriptions sharing one key extractor.
+     */
+    private static final class Index {
+
+        private final Function<Object, ?> extractor;
+        private final Map<Object, Entries> entries;
+        private final Entries all;
+        private final Entries none;
+
+        Index(Function<Object, ?> extractor, Map<Object, Entries> entries, Entries all, Entries none) {
+            this.extractor = extractor;
+            this.entries = entries;
+            this.all = all;
+            this.none = none;
+        }
+
+        Entries get(Object event) {
+            Object key;
+            try {
+                key = extractor.apply(event);
+            } catch (RuntimeException e) {
+                return all;
+            }
+            Entries matches = entries.get(key);
+            return matches == null ? none : matches;
+        }
+    }
+
+    /**
+     * Subscriptions with their positions in the baked handlers, sorted by position.
+     */
+    private static final class Entries {
+
+        static final Entries EMPTY = new Entries(new Subscription<?>[0], new int[0]);
+
+        final Subscription<?>[] subscriptions;
+        final int[] positions;
+
+        Entries(Subscription<?>[] subscriptions, int[] positions) {
+            this.subscriptions = subscriptions;
+            this.positions = positions;
+        }
+
+        boolean isEmpty() {
+            return subscriptions.length == 0;
+        }
+
+        /**
+         * Merge two disjoint entries, keeping the dispatch order.
+         */
+        Entries merge(Entries other) {
+            if (other.isEmpty()) {
+                return this;
+            }
+            if (isEmpty()) {
+                return other;
+            }
+            int size = subscriptions.length + other.subscriptions.length;
+            Subscription<?>[] mergedSubscriptions = new Subscription<?>[size];
+            int[] mergedPositions = new int[size];
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < size; i++) {
+                if (b == other.positions.length || (a < positions.length && positions[a] < other.positions[b])) {
+                    mergedSubscriptions[i] = subscriptions[a];
+                    mergedPositions[i] = positions[a++];
+                } else {
+                    mergedSubscriptions[i] = other.subscriptions[b];
+                    mergedPositions[i] = other.positions[b++];
+                }
+            }
+            return new Entries(mergedSubscriptions, mergedPositions);
+        }
+    }
+
+    private static final class Builder {
+
+        private final List<Subscription<?>> subscriptions = new ArrayList<>();
+        private int[] positions = new int[4];
+
+        void add(Subscription<?> subscription, int position) {
+            if (subscriptions.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[subscriptions.size()] = position;
+            subscriptions.add(subscription);
+        }
+
+        Entries build() {
+            if (subscriptions.isEmpty()) {
+                return Entries.EMPTY;
+            }
+            return new Entries(subscriptions.toArray(new Subscription<?>[0]), Arrays.copyOf(positions, subscriptions.size()));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package me.toddcarter.event;
+
+public interface Partitioned {
+
+    /**
+     * Gets the partition key of this event.
+     * <p>
+     * Events with equal keys called asynchronously on the same bus are executed one at a time in the order they were called.
+     *
+     * @return the partition key
+     */
+    Object getPartitionKey();
+}
@@ -0,0 +1,74 @@
+package me.toddcarter.event;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An event that can be recycled through an {@link EventPool} instead of being allocated for every call.
+ * <p>
+ * A poolable event is reference counted. It starts with a single reference owned by the caller, which is released by the bus
+ * once the last subscriber has been executed by callSync, callSyncBatch or a ring buffer.
+ * Events called with callAsync are not released by the bus, release them once the returned future has completed.
+ * A subscriber keeping the event after it returns must {@link #retain()} it and release it when done,
+ * coalescing and debouncing subscriptions retain their pending event themselves.
+ */
+public abstract class PoolableEvent extends Event {
+
+    private static final AtomicIntegerFieldUpdater<PoolableEvent> REFERENCES = AtomicIntegerFieldUpdater.newUpdater(PoolableEvent.class, "references");
+
+    private volatile int references = 1;
+    EventPool<?> pool;
+
+    /**
+     * Clear the state of the event before it is returned to its pool.
+     */
+    protected abstract void reset();
+
+    /**
+     * Keep the event from being recycled until a matching {@link #release()}.
+     *
+     * @return this event
+     * @throws IllegalStateException if the event has already been recycled
+     */
+    public final PoolableEvent retain() {
+        int references;
+        do {
+            references = this.references;
+            if (references <= 0) {
+                throw new IllegalStateException("The event has already been released");
+            }
+        } while (!REFERENCES.compareAndSet(this, references, references + 1));
+        return this;
+    }
+
+    /**
+     * Release a reference, the event is reset and returned to its pool once every reference has been released.
+     *
+     * @throws IllegalStateException if the event has been released more times than it was retained
+     */
+    public final void release() {
+        int references = REFERENCES.decrementAndGet(this);
+        if (references == 0) {
+            reset();
+            EventPool<?> pool = this.pool;
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (references < 0) {
+            REFERENCES.incrementAndGet(this);
+            throw new IllegalStateException("The event has already been released");
+        }
+    }
+
+    /**
+     * Get the amount of references to the event.
+     *
+     * @return the reference count, 0 once released
+     */
+    public final int getReferenceCount() {
+        return references;
+    }
+
+    void acquired() {
+        references = 1;
+    }
+}
@@ -0,0 +1,78 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.subscription.Subscription;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The subscribers of an event class composed into a single method handle.
+ * <p>
+ * The handle of every subscriber is compiled by {@link Subscription#compile()} and the handles are chained in dispatch order,
+ * so the dispatcher has no loop and no call site shared with other event classes. The handle is invoked exactly,
+ * once hot the JVM customizes its lambda forms to the bound subscribers, which lets the JIT inline their filters and handlers.
+ * A dispatcher is immutable and is compiled again whenever the subscribers it was compiled from change.
+ */
+final class CompiledDispatcher {
+
+    /**
+     * The most subscribers composed into one handle, longer arrays are dispatched by the generic loop.
+     */
+    static final int MAX_SUBSCRIBERS = 64;
+
+    private static final MethodHandle NOTHING;
+    private static final MethodHandle IGNORE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            NOTHING = lookup.findStatic(CompiledDispatcher.class, "nothing", MethodType.methodType(void.class, Object.class));
+            IGNORE = lookup.findStatic(CompiledDispatcher.class, "ignore", MethodType.methodType(void.class, Throwable.class, Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The subscribers this dispatcher was compiled from, compared by identity to check if it is still valid.
+     */
+    final Subscription<?>[] source;
+    private final MethodHandle invoker;
+
+    private CompiledDispatcher(Subscription<?>[] source, MethodHandle invoker) {
+        this.source = source;
+        this.invoker = invoker;
+    }
+
+    /**
+     * Compile the subscribers of an event class.
+     *
+     * @param listeners the subscribers in dispatch order, at most {@link #MAX_SUBSCRIBERS}
+     * @return the dispatcher
+     */
+    static CompiledDispatcher compile(Subscription<?>[] listeners) {
+        MethodHandle invoker = NOTHING;
+        for (int i = listeners.length - 1; i >= 0; i--) {
+            // an error handler that rethrows does not stop the other subscribers
+            MethodHandle subscriber = MethodHandles.catchException(listeners[i].compile(), Throwable.class, IGNORE);
+            invoker = MethodHandles.foldArguments(invoker, subscriber);
+        }
+        return new CompiledDispatcher(listeners, invoker);
+    }
+
+    void dispatch(Event event) {
+        try {
+            invoker.invokeExact((Object) event);
+        } catch (Throwable ignored) {
+            // every subscriber already catches its own errors
+        }
+    }
+
+    private static void nothing(Object event) {
+    }
+
+    private static void ignore(Throwable t, Object event) {
+    }
+}
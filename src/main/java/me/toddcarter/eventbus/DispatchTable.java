@@ -0,0 +1,125 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.event.KeyIndex;
+import me.toddcarter.subscription.Subscription;
+
+/**
+ * The flattened, priority ordered subscriptions of a concrete event class,
+ * merged from its own handler list and the handler lists of every subscribed supertype.
+ * <p>
+ * A table is immutable, it is rebuilt when one of its handler lists changes.
+ */
+final class DispatchTable {
+
+    private static final int SLOTS = EventPriority.values().length;
+    private static final Subscription<?>[] NO_HANDLERS = new Subscription<?>[0];
+
+    final Hierarchy hierarchy;
+    final HandlerList handlers;
+    final HandlerList[] supertypes;
+    private final Subscription<?>[][] sources;
+    final Subscription<?>[] listeners;
+
+    /**
+     * The key index of the merged subscriptions, so keyed subscriptions of every list are routed by key.
+     */
+    final KeyIndex index;
+
+    private DispatchTable(Hierarchy hierarchy, HandlerList handlers, HandlerList[] supertypes) {
+        this.hierarchy = hierarchy;
+        this.handlers = handlers;
+        this.supertypes = supertypes;
+        this.sources = new Subscription<?>[supertypes.length + 1][];
+        this.sources[0] = handlers.getRegisteredListeners();
+        for (int i = 0; i < supertypes.length; i++) {
+            this.sources[i + 1] = supertypes[i].getRegisteredListeners();
+        }
+        this.listeners = merge(sources);
+        this.index = KeyIndex.build(listeners);
+    }
+
+    /**
+     * Build the dispatch table of an event class.
+     *
+     * @param eventClass the concrete event class
+     * @param handlers   the handler list of the event class
+     * @param hierarchy  the subscribed supertypes
+     * @return the table
+     */
+    static DispatchTable build(Class<?> eventClass, HandlerList handlers, Hierarchy hierarchy) {
+        return new DispatchTable(hierarchy, handlers, hierarchy.listsFor(eventClass));
+    }
+
+    /**
+     * Check whether the table still reflects the registered subscriptions.
+     *
+     * @param handlers  the current handler list of the event
+     * @param hierarchy the current subscribed supertypes
+     * @return true if the table can be used
+     */
+    boolean isValid(HandlerList handlers, Hierarchy hierarchy) {
+        if (this.hierarchy != hierarchy || this.handlers != handlers || sources[0] != handlers.getRegisteredListeners()) {
+            return false;
+        }
+        for (int i = 0; i < supertypes.length; i++) {
+            if (sources[i + 1] != supertypes[i].getRegisteredListeners()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuild the table from the current subscriptions of its handler lists.
+     *
+     * @return the new table
+     */
+    DispatchTable rebuild() {
+        return new DispatchTable(hierarchy, handlers, supertypes);
+    }
+
+    /**
+     * Compact the subscriptions that expired in every handler list of the table.
+     */
+    void bake() {
+        handlers.bake();
+        for (HandlerList supertype : supertypes) {
+            supertype.bake();
+        }
+    }
+
+    /**
+     * Merge priority ordered arrays, within a priority the order of the sources is kept.
+     */
+    private static Subscription<?>[] merge(Subscription<?>[][] sources) {
+        int nonEmpty = 0;
+        int size = 0;
+        Subscription<?>[] only = NO_HANDLERS;
+        for (Subscription<?>[] source : sources) {
+            if (source.length > 0) {
+                nonEmpty++;
+                size += source.length;
+                only = source;
+            }
+        }
+        if (nonEmpty <= 1) {
+            return only;
+        }
+        Subscription<?>[] merged = new Subscription<?>[size];
+        int[] positions = new int[sources.length];
+        int index = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            for (int i = 0; i < sources.length; i++) {
+                Subscription<?>[] source = sources[i];
+                int position = positions[i];
+                while (position < source.length && source[position].getPriority().getSlot() == slot) {
+                    merged[index++] = source[position++];
+                }
+                positions[i] = position;
+            }
+        }
+        return merged;
+    }
+}
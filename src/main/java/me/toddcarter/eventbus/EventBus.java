@@ -1,15 +1,208 @@
 package me.toddcarter.eventbus;
 
 import me.toddcarter.event.Event;
+import me.toddcarter.event.EventPriority;
 import me.toddcarter.event.HandlerList;
+import me.toddcarter.event.KeyIndex;
+import me.toddcarter.event.Partitioned;
+import me.toddcarter.event.PoolableEvent;
+import me.toddcarter.journal.Journal;
+import me.toddcarter.metrics.EventMetrics;
+import me.toddcarter.metrics.MetricsSnapshot;
+import me.toddcarter.metrics.SubscriptionMetrics;
+import me.toddcarter.subscription.AnnotatedListeners;
+import me.toddcarter.subscription.Subscribe;
 import me.toddcarter.subscription.Subscription;
+import me.toddcarter.subscription.SubscriptionBuilder;
+import me.toddcarter.timer.HashedWheelTimer;
 import org.jetbrains.annotations.NotNull;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-public final class EventBus {
+/**
+ * An event bus with its own subscriptions, executor and settings.
+ * <p>
+ * Buses created with {@link #EventBus()} share the static handler lists of the event classes and every other subscription, one of them is used by {@link me.toddcarter.Events}.
+ * Buses created with {@link #builder()} have their own handler lists, so they can be used to isolate or shard subsystems.
+ */
+public final class EventBus implements AutoCloseable {
 
+    private static final int DEFAULT_STRIPES = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Resolved handler lists, the reflective lookup is only done once per event class.
+     */
+    private static final ClassValue<HandlerList> handlerLists = new ClassValue<HandlerList>() {
+        @Override
+        protected HandlerList computeValue(Class<?> type) {
+            return resolveHandlerList(type.asSubclass(Event.class));
+        }
+    };
+
+    /**
+     * Metrics per event type, null while metrics are disabled.
+     */
+    private volatile ConcurrentHashMap<Class<? extends Event>, EventMetrics> eventMetrics;
+
+    /**
+     * The supertype lists, dispatch tables and owners of this bus, shared by every bus created with {@link #EventBus()}.
+     */
+    private final Registry registry;
+
+    /**
+     * Compiled dispatchers per concrete event class, null while compiled dispatch is disabled.
+     */
+    private volatile ConcurrentHashMap<Class<?>, CompiledDispatcher> compiledDispatchers;
+
+    /**
+     * Priority slots whose subscribers run in parallel for every event type, as a bit mask.
+     */
+    private volatile int parallelSlots;
+
+    /**
+     * Event types whose subscribers run in parallel within every priority.
+     */
+    private final Set<Class<?>> parallelTypes = ConcurrentHashMap.newKeySet();
+    private final ForkJoinPool fanOutPool;
+
+    /**
+     * The journal events are appended to before they are called, null if events are not journaled.
+     */
+    private volatile Journal journal;
+
+    private final String name;
+    private final Executor executor;
+
+    /**
+     * The pool created for {@link Builder#threads(int)}, null when the executor is not owned by this bus.
+     */
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Runs partitioned async events in order per key on the executor.
+     */
+    private final StripedExecutor stripedExecutor;
+
+    /**
+     * Calls delayed and periodic events on the executor.
+     */
+    private final EventScheduler scheduler;
+
+    /**
+     * The handler lists of this bus by event class, null when the static handler lists of the events are shared.
+     */
+    private final ClassValue<HandlerList> localLists;
+
+    /**
+     * Create a bus sharing the static handler lists of the event classes, calling async events on the common pool.
+     * <p>
+     * Every bus created this way, including the one used by {@link me.toddcarter.Events}, also shares its supertype subscriptions and owners,
+     * so they all see the same subscriptions. Their executor, metrics, parallel priorities and journal are their own.
+     */
+    public EventBus() {
+        this.name = "default";
+        this.executor = ForkJoinPool.commonPool();
+        this.ownedExecutor = null;
+        this.stripedExecutor = new StripedExecutor(executor, DEFAULT_STRIPES);
+        this.scheduler = new EventScheduler(this, executor, HashedWheelTimer.shared());
+        this.fanOutPool = ForkJoinPool.commonPool();
+        this.localLists = null;
+        this.registry = Registry.SHARED;
+    }
+
+    private EventBus(Builder builder) {
+        this.name = builder.name;
+        this.ownedExecutor = builder.threads > 0 ? newFixedThreadPool(builder.name, builder.threads) : null;
+        this.executor = ownedExecutor != null ? ownedExecutor : builder.executor;
+        this.stripedExecutor = new StripedExecutor(executor, builder.stripes);
+        this.scheduler = new EventScheduler(this, executor, builder.timer == null ? HashedWheelTimer.shared() : builder.timer);
+        this.fanOutPool = builder.fanOutPool;
+        this.localLists = new ClassValue<HandlerList>() {
+            @Override
+            protected HandlerList computeValue(Class<?> type) {
+                return new HandlerList(false);
+            }
+        };
+        this.registry = new Registry();
+        if (builder.metrics) {
+            setMetricsEnabled(true);
+        }
+        if (builder.compiledDispatch) {
+            setCompiledDispatch(true);
+        }
+        this.journal = builder.journal;
+    }
+
+    /**
+     * Create a builder for a bus with its own handler lists.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Initialise a new subscription builder registering to this bus.
+     *
+     * @param eventClass the event class to subscribe to
+     * @param priority   the priority of the subscription
+     */
+    public <T extends Event> SubscriptionBuilder<T> subscribe(Class<T> eventClass, EventPriority priority) {
+        return new SubscriptionBuilder<>(this, eventClass, priority);
+    }
+
+    /**
+     * Initialise a new subscription builder registering to this bus.
+     *
+     * @param eventClass the event class to subscribe to
+     */
+    public <T extends Event> SubscriptionBuilder<T> subscribe(Class<T> eventClass) {
+        return subscribe(eventClass, EventPriority.NORMAL);
+    }
+
+    /**
+     * Initialise a new subscription builder registering to this bus, which receives every event that is a subtype of the type.
+     *
+     * @param type     the supertype of the events to subscribe to
+     * @param priority the priority of the subscription
+     */
+    public <T> SubscriptionBuilder<T> subscribeAll(Class<T> type, EventPriority priority) {
+        return new SubscriptionBuilder<>(this, type, priority).includeSubtypes();
+    }
+
+    /**
+     * Initialise a new subscription builder registering to this bus, which receives every event that is a subtype of the type.
+     *
+     * @param type the supertype of the events to subscribe to
+     */
+    public <T> SubscriptionBuilder<T> subscribeAll(Class<T> type) {
+        return subscribeAll(type, EventPriority.NORMAL);
+    }
 
     /**
      * Register a new listener
@@ -17,16 +210,117 @@ public final class EventBus {
      * @param subscription the listener to register
      *
      */
-    public void registerListener(@NotNull Subscription<? extends Event> subscription) {
-        try {
-            final Class<? extends Event> eventClass = subscription.getEventClass().asSubclass(Event.class);
-            Method method = eventClass.getDeclaredMethod("getHandlerList");
-            method.setAccessible(true);
-            HandlerList hl = (HandlerList) method.invoke(null);
-            hl.register(subscription);
-        } catch (NoSuchMethodException| InvocationTargetException | IllegalAccessException e) {
-            e.printStackTrace();
+    public void registerListener(@NotNull Subscription<?> subscription) {
+        HandlerList handlerList = prepare(subscription);
+        handlerList.register(subscription);
+        addOwned(subscription);
+    }
+
+    /**
+     * Register a collection of listeners, publishing a single snapshot per handler list
+     * <p>
+     * If a listener is already registered, none of the listeners are registered.
+     *
+     * @param subscriptions the listeners to register
+     * @throws IllegalStateException if a listener is already registered or given twice
+     */
+    public void registerAll(@NotNull Collection<? extends Subscription<?>> subscriptions) {
+        Map<HandlerList, List<Subscription<?>>> groups = new IdentityHashMap<>();
+        Set<Subscription<?>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Subscription<?> subscription : subscriptions) {
+            HandlerList handlerList = prepare(subscription);
+            if (subscription.getHandlerList() != null || !seen.add(subscription)) {
+                throw new IllegalStateException("This listener is already registered to priority " + subscription.getPriority().toString());
+            }
+            groups.computeIfAbsent(handlerList, list -> new ArrayList<>()).add(subscription);
+        }
+        List<Map.Entry<HandlerList, List<Subscription<?>>>> registered = new ArrayList<>(groups.size());
+        for (Map.Entry<HandlerList, List<Subscription<?>>> group : groups.entrySet()) {
+            try {
+                group.getKey().registerAll(group.getValue());
+            } catch (IllegalStateException e) {
+                // registered concurrently, take back the groups that were already published
+                for (Map.Entry<HandlerList, List<Subscription<?>>> undo : registered) {
+                    undo.getKey().unregisterAll(undo.getValue());
+                }
+                throw e;
+            }
+            registered.add(group);
+        }
+        for (Subscription<?> subscription : subscriptions) {
+            addOwned(subscription);
+        }
+    }
+
+    /**
+     * Register every {@link Subscribe} method of a listener object, publishing a single snapshot per handler list
+     * <p>
+     * The methods of each listener class are only scanned once.
+     *
+     * @param listener the listener object
+     * @throws IllegalArgumentException if the listener has no {@link Subscribe} methods, or an annotated method is static or does not take a single event parameter
+     */
+    public void register(@NotNull Object listener) {
+        registerAll(AnnotatedListeners.build(this, listener));
+    }
+
+    /**
+     * Unregister every {@link Subscribe} method of a listener object, and any other listener owned by it
+     *
+     * @param listener the listener object
+     * @throws IllegalArgumentException if the listener has no {@link Subscribe} methods
+     */
+    public void unregister(@NotNull Object listener) {
+        AnnotatedListeners.check(listener);
+        unregisterOwner(listener);
+    }
+
+    private HandlerList prepare(Subscription<?> subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        final HandlerList handlerList;
+        if (subscription.isHierarchical()) {
+            handlerList = getSupertypeList(subscription.getEventClass());
+        } else {
+            Class<?> eventClass = subscription.getEventClass();
+            if (!Event.class.isAssignableFrom(eventClass)) {
+                throw new IllegalArgumentException(eventClass.getName() + " is not an event, subscribe to it with subscribeAll instead");
+            }
+            handlerList = localLists == null ? getHandlerList(eventClass.asSubclass(Event.class)) : localLists.get(eventClass);
+        }
+        if (eventMetrics != null) {
+            subscription.setMetricsEnabled(true);
         }
+        registry.usedLists.add(handlerList);
+        return handlerList;
+    }
+
+    private void addOwned(Subscription<?> subscription) {
+        Object owner = subscription.getOwner();
+        if (owner == null) {
+            return;
+        }
+        registry.owners.compute(new Owner(owner), (key, owned) -> {
+            if (owned == null) {
+                owned = ConcurrentHashMap.newKeySet();
+            } else if (owned.size() >= 16 && Integer.bitCount(owned.size()) == 1) {
+                // drop the subscriptions that expired since, every time the set doubles
+                owned.removeIf(other -> !other.isActive());
+            }
+            owned.add(subscription);
+            return owned;
+        });
+    }
+
+    /**
+     * Unregister every listener of this bus.
+     * <p>
+     * On a bus created with {@link #EventBus()} this includes the listeners registered through every other such bus.
+     */
+    public void unregisterAll() {
+        for (HandlerList handlerList : registry.usedLists) {
+            handlerList.clear();
+        }
+        registry.owners.clear();
     }
 
     /**
@@ -35,18 +329,272 @@ public final class EventBus {
      * @param subscription the listener to unregister
      *
      */
-    public void unregisterListener(@NotNull Subscription<? extends Event> subscription) {
-        try {
-            final Class<? extends Event> eventClass = subscription.getEventClass().asSubclass(Event.class);
-            Method method = eventClass.getDeclaredMethod("getHandlerList");
-            method.setAccessible(true);
-            HandlerList hl = (HandlerList) method.invoke(null);
-            hl.unregister(subscription);
-        } catch (NoSuchMethodException| InvocationTargetException | IllegalAccessException e) {
-            e.printStackTrace();
+    public void unregisterListener(@NotNull Subscription<?> subscription) {
+        HandlerList handlerList = subscription.getHandlerList();
+        if (handlerList != null) {
+            handlerList.unregister(subscription);
+        }
+        Object owner = subscription.getOwner();
+        if (owner != null) {
+            registry.owners.computeIfPresent(new Owner(owner), (key, owned) -> owned.remove(subscription) && owned.isEmpty() ? null : owned);
+        }
+    }
+
+    /**
+     * Unregister every listener of an owner, publishing a single snapshot per affected handler list
+     *
+     * @param owner the owner given to {@link SubscriptionBuilder#owner(Object)}
+     * @return the amount of listeners unregistered
+     */
+    public int unregisterOwner(@NotNull Object owner) {
+        Objects.requireNonNull(owner, "owner");
+        Set<Subscription<?>> owned = registry.owners.remove(new Owner(owner));
+        if (owned == null) {
+            return 0;
+        }
+        Map<HandlerList, List<Subscription<?>>> groups = new IdentityHashMap<>();
+        int count = 0;
+        for (Subscription<?> subscription : owned) {
+            HandlerList handlerList = subscription.getHandlerList();
+            if (handlerList != null) {
+                groups.computeIfAbsent(handlerList, list -> new ArrayList<>()).add(subscription);
+                count++;
+            }
+        }
+        for (Map.Entry<HandlerList, List<Subscription<?>>> group : groups.entrySet()) {
+            group.getKey().unregisterAll(group.getValue());
+        }
+        return count;
+    }
+
+    /**
+     * Get the handler list of an event class
+     *
+     * @param eventClass the event class
+     * @return the handler list returned by the static getHandlerList method of the event class
+     * @throws IllegalArgumentException if the event class does not declare a static getHandlerList method
+     */
+    @NotNull
+    public static HandlerList getHandlerList(@NotNull Class<? extends Event> eventClass) {
+        return handlerLists.get(eventClass);
+    }
+
+    /**
+     * Call the event on the current thread.
+     *
+     * @param event the event to call
+     */
+    public void callSync(@NotNull Event event) {
+        fireEvent(event);
+        if (event instanceof PoolableEvent) {
+            ((PoolableEvent) event).release();
+        }
+    }
+
+    /**
+     * Whether any subscriber could receive events of a class.
+     * <p>
+     * This reads the baked handlers of the event class, so it is cheap enough to check before building every event.
+     * Subscriptions that expired but have not been compacted yet are still counted.
+     *
+     * @param eventClass the event class
+     * @return true if there is at least one subscriber
+     */
+    public boolean hasListeners(@NotNull Class<? extends Event> eventClass) {
+        HandlerList handlers = localLists == null ? getHandlerList(eventClass) : localLists.get(eventClass);
+        if (handlers.hasListeners()) {
+            return true;
         }
+        Hierarchy hierarchy = registry.hierarchy;
+        return !hierarchy.isEmpty() && getDispatchTable(eventClass, handlers, hierarchy).listeners.length > 0;
     }
 
+    /**
+     * Build and call an event only if anyone is listening, or if it is journaled.
+     *
+     * @param eventClass the event class
+     * @param supplier   builds the event
+     * @return true if the event was built and called
+     */
+    public <T extends Event> boolean callSync(@NotNull Class<T> eventClass, @NotNull Supplier<? extends T> supplier) {
+        if (!isInteresting(eventClass)) {
+            return false;
+        }
+        callSync(supplier.get());
+        return true;
+    }
+
+    /**
+     * Build and call an event on the executor of this bus only if anyone is listening, or if it is journaled.
+     *
+     * @param eventClass the event class
+     * @param supplier   builds the event, on the calling thread
+     * @return a future completed with the event once every subscriber has been executed, or with null if the event was not built
+     */
+    @NotNull
+    public <T extends Event> CompletableFuture<T> callAsync(@NotNull Class<T> eventClass, @NotNull Supplier<? extends T> supplier) {
+        if (!isInteresting(eventClass)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return callAsync(supplier.get());
+    }
+
+    private boolean isInteresting(Class<? extends Event> eventClass) {
+        Journal journal = this.journal;
+        return hasListeners(eventClass) || (journal != null && journal.isJournaled(eventClass));
+    }
+
+    /**
+     * Call the event on the executor of this bus.
+     *
+     * @param event the event to call
+     * @return a future completed with the event once every subscriber has been executed
+     */
+    @NotNull
+    public <T extends Event> CompletableFuture<T> callAsync(@NotNull T event) {
+        Objects.requireNonNull(event, "event");
+        if (event instanceof Partitioned) {
+            return callAsync(event, ((Partitioned) event).getPartitionKey());
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            call(event, true);
+            return event;
+        }, executor);
+    }
+
+    /**
+     * Call the event on the executor of this bus, after every event previously called with an equal key.
+     * <p>
+     * Events with different keys are called in parallel across a fixed set of stripes.
+     *
+     * @param event the event to call
+     * @param key   the partition key, events are ordered per key
+     * @return a future completed with the event once every subscriber has been executed
+     */
+    @NotNull
+    public <T extends Event> CompletableFuture<T> callAsync(@NotNull T event, Object key) {
+        Objects.requireNonNull(event, "event");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        stripedExecutor.execute(key, () -> {
+            try {
+                call(event, true);
+                future.complete(event);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Call every event on the executor of this bus, each event is called independently.
+     *
+     * @param events the events to call
+     * @return a future completed once every event has been called
+     */
+    @NotNull
+    public CompletableFuture<Void> callAsyncAll(@NotNull Collection<? extends Event> events) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[events.size()];
+        int i = 0;
+        for (Event event : events) {
+            futures[i++] = callAsync(event);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Call a batch of events on the calling thread.
+     * <p>
+     * The events are grouped by class and the subscribers of each class are resolved once,
+     * each subscriber then handles every event of the group before the next subscriber runs.
+     * Subscribers built with a batch handler receive the group in a single call.
+     *
+     * @param events the events to call
+     */
+    public void callSyncBatch(@NotNull Collection<? extends Event> events) {
+        Objects.requireNonNull(events, "events");
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<Class<? extends Event>, List<Event>> groups = new LinkedHashMap<>();
+        for (Event event : events) {
+            Objects.requireNonNull(event, "event");
+            groups.computeIfAbsent(event.getClass(), type -> new ArrayList<>()).add(event);
+        }
+        for (List<Event> group : groups.values()) {
+            fireBatch(group);
+            if (group.get(0) instanceof PoolableEvent) {
+                for (Event event : group) {
+                    ((PoolableEvent) event).release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Call a batch of events on the executor of this bus, see {@link #callSyncBatch(Collection)}.
+     *
+     * @param events the events to call
+     * @return a future completed once every event has been called
+     */
+    @NotNull
+    public CompletableFuture<Void> callAsyncBatch(@NotNull Collection<? extends Event> events) {
+        Objects.requireNonNull(events, "events");
+        List<Event> copy = new ArrayList<>(events);
+        return CompletableFuture.runAsync(() -> callSyncBatch(copy), executor);
+    }
+
+    /**
+     * Call an event after a delay.
+     * <p>
+     * The event is called on the executor of this bus, together with the other events due on the same tick of the timer,
+     * see {@link #callSyncBatch(Collection)}. Delays are rounded up to the tick of the timer.
+     *
+     * @param event the event to call
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the handle to cancel the call with
+     * @throws java.util.concurrent.RejectedExecutionException if the bus is closed
+     */
+    @NotNull
+    public ScheduledCall callLater(@NotNull Event event, long delay, @NotNull TimeUnit unit) {
+        Objects.requireNonNull(event, "event");
+        Objects.requireNonNull(unit, "unit");
+        return scheduler.schedule(() -> event, unit.toNanos(Math.max(delay, 0)), 0);
+    }
+
+    /**
+     * Call an event built by a supplier at a fixed rate, starting after one period.
+     * <p>
+     * The supplier is called on the executor of this bus every time the event is due, a null event is not called.
+     * Periods that passed while the bus could not keep up are skipped.
+     *
+     * @param supplier the supplier of the events
+     * @param period   the period
+     * @param unit     the unit of the period
+     * @return the handle to cancel the calls with
+     * @throws java.util.concurrent.RejectedExecutionException if the bus is closed
+     */
+    @NotNull
+    public ScheduledCall callEvery(@NotNull Supplier<? extends Event> supplier, long period, @NotNull TimeUnit unit) {
+        Objects.requireNonNull(supplier, "supplier");
+        Objects.requireNonNull(unit, "unit");
+        if (period < 1) {
+            throw new IllegalArgumentException("period < 1");
+        }
+        long periodNanos = unit.toNanos(period);
+        return scheduler.schedule(supplier, periodNanos, periodNanos);
+    }
+
+    /**
+     * Create a builder for a ring buffer dispatcher calling events on this bus from dedicated threads.
+     *
+     * @return the builder
+     */
+    @NotNull
+    public RingBufferDispatcher.Builder ringBuffer() {
+        return RingBufferDispatcher.builder(this);
+    }
 
     /**
      * Post an event to the event bus
@@ -66,15 +614,574 @@ public final class EventBus {
     }
 
     private void fireEvent(Event event) {
-        HandlerList handlers = event.getHandlers();
-        Subscription<?>[] listeners = handlers.getRegisteredListeners();
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.append(event);
+        }
+
+        EventMetrics metrics = getEventMetrics(event.getClass());
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        HandlerList handlers = localLists == null ? event.getHandlers() : localLists.get(event.getClass());
+        Hierarchy hierarchy = registry.hierarchy;
+        DispatchTable table = hierarchy.isEmpty() ? null : getDispatchTable(event.getClass(), handlers, hierarchy);
+        KeyIndex index = table == null ? handlers.getKeyIndex() : table.index;
+        Subscription<?>[] listeners = index.getListeners(event);
+
+        int parallelSlots = getParallelSlots(event.getClass());
+        ConcurrentHashMap<Class<?>, CompiledDispatcher> compiledDispatchers = this.compiledDispatchers;
+        if (parallelSlots != 0) {
+            fanOut(listeners, parallelSlots, registration -> execute(registration, event, metrics));
+        } else if (compiledDispatchers != null && metrics == null && !index.isIndexed() && listeners.length <= CompiledDispatcher.MAX_SUBSCRIBERS) {
+            getCompiledDispatcher(compiledDispatchers, event.getClass(), listeners).dispatch(event);
+        } else {
+            for (Subscription<?> registration : listeners) {
+                execute(registration, event, metrics);
+            }
+        }
+
+        //compact the subscriptions that expired during this dispatch
+        if (table == null) {
+            handlers.bake();
+        } else {
+            table.bake();
+        }
+
+        if (metrics != null) {
+            metrics.dispatched(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Call a group of events sharing the same class, resolving the subscribers once.
+     */
+    private void fireBatch(List<Event> events) {
+        Journal journal = this.journal;
+        if (journal != null) {
+            for (Event event : events) {
+                journal.append(event);
+            }
+        }
+
+        Event first = events.get(0);
+        EventMetrics metrics = getEventMetrics(first.getClass());
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        HandlerList handlers = localLists == null ? first.getHandlers() : localLists.get(first.getClass());
+        Hierarchy hierarchy = registry.hierarchy;
+        DispatchTable table = hierarchy.isEmpty() ? null : getDispatchTable(first.getClass(), handlers, hierarchy);
+        KeyIndex index = table == null ? handlers.getKeyIndex() : table.index;
+        Subscription<?>[] listeners = index.getHandlers();
+        Map<Subscription<?>, List<Event>> routed = index.isIndexed() ? route(index, events) : null;
+
+        int parallelSlots = getParallelSlots(first.getClass());
+        if (parallelSlots != 0) {
+            fanOut(listeners, parallelSlots, registration -> executeBatch(registration, events, routed, metrics));
+        } else {
+            for (Subscription<?> registration : listeners) {
+                executeBatch(registration, events, routed, metrics);
+            }
+        }
+
+        //compact the subscriptions that expired during this dispatch
+        if (table == null) {
+            handlers.bake();
+        } else {
+            table.bake();
+        }
+
+        if (metrics != null) {
+            long elapsed = (System.nanoTime() - start) / events.size();
+            for (int i = 0; i < events.size(); i++) {
+                metrics.dispatched(elapsed);
+            }
+        }
+    }
+
+    /**
+     * Get the metrics of an event type.
+     *
+     * @return the metrics, or null if metrics are disabled
+     */
+    private EventMetrics getEventMetrics(Class<? extends Event> eventClass) {
+        ConcurrentHashMap<Class<? extends Event>, EventMetrics> eventMetrics = this.eventMetrics;
+        if (eventMetrics == null) {
+            return null;
+        }
+        EventMetrics metrics = eventMetrics.get(eventClass);
+        if (metrics != null) {
+            return metrics;
+        }
+        // computeIfAbsent locks the bin on Java 8 even if the type is present, so it is only used on a miss
+        return eventMetrics.computeIfAbsent(eventClass, type -> new EventMetrics());
+    }
+
+    private int getParallelSlots(Class<?> eventClass) {
+        int parallelSlots = this.parallelSlots;
+        if (!parallelTypes.isEmpty() && parallelTypes.contains(eventClass)) {
+            parallelSlots = -1;
+        }
+        return parallelSlots;
+    }
+
+    /**
+     * Execute the listeners one priority at a time, running the listeners of a parallel priority concurrently on the fan out pool.
+     */
+    private void fanOut(Subscription<?>[] listeners, int parallelSlots, Consumer<Subscription<?>> action) {
+        int from = 0;
+        while (from < listeners.length) {
+            int slot = listeners[from].getPriority().getSlot();
+            int to = from + 1;
+            while (to < listeners.length && listeners[to].getPriority().getSlot() == slot) {
+                to++;
+            }
+            if (to - from > 1 && (parallelSlots & (1 << slot)) != 0) {
+                //the next priority only starts once every listener of this one has been executed
+                fanOutPool.invoke(new FanOut(action, listeners, from, to));
+            } else {
+                for (int i = from; i < to; i++) {
+                    action.accept(listeners[i]);
+                }
+            }
+            from = to;
+        }
+    }
 
-        for (Subscription<?> registration : listeners) {
+    private static void execute(Subscription<?> registration, Event event, EventMetrics metrics) {
+        try {
+            registration.execute(event);
+        } catch (Throwable ex) {
+            if (metrics != null) {
+                metrics.failed();
+            }
+        }
+    }
+
+    /**
+     * Execute a listener for the events of a batch, only for the events routed to it if it is keyed.
+     */
+    private static void executeBatch(Subscription<?> registration, List<Event> events, Map<Subscription<?>, List<Event>> routed, EventMetrics metrics) {
+        List<Event> received = events;
+        if (routed != null && registration.isKeyed()) {
+            received = routed.get(registration);
+            if (received == null) {
+                return;
+            }
+        }
+        if (registration.isBatched()) {
             try {
-                registration.execute(event);
+                registration.executeBatch(received);
             } catch (Throwable ex) {
-                //do nothing
+                if (metrics != null) {
+                    metrics.failed();
+                }
+            }
+            return;
+        }
+        for (Event event : received) {
+            execute(registration, event, metrics);
+        }
+    }
+
+    /**
+     * Group the events of a batch by the keyed subscriptions their key is routed to.
+     */
+    private static Map<Subscription<?>, List<Event>> route(KeyIndex index, List<Event> events) {
+        Map<Subscription<?>, List<Event>> routed = new IdentityHashMap<>();
+        for (Event event : events) {
+            for (Subscription<?> subscription : index.getListeners(event)) {
+                if (subscription.isKeyed()) {
+                    routed.computeIfAbsent(subscription, key -> new ArrayList<>()).add(event);
+                }
             }
         }
+        return routed;
+    }
+
+    private static CompiledDispatcher getCompiledDispatcher(ConcurrentHashMap<Class<?>, CompiledDispatcher> compiledDispatchers, Class<?> eventClass, Subscription<?>[] listeners) {
+        CompiledDispatcher dispatcher = compiledDispatchers.get(eventClass);
+        if (dispatcher == null || dispatcher.source != listeners) {
+            dispatcher = CompiledDispatcher.compile(listeners);
+            compiledDispatchers.put(eventClass, dispatcher);
+        }
+        return dispatcher;
+    }
+
+    private DispatchTable getDispatchTable(Class<?> eventClass, HandlerList handlers, Hierarchy hierarchy) {
+        DispatchTable table = registry.dispatchTables.get(eventClass);
+        if (table != null && table.isValid(handlers, hierarchy)) {
+            return table;
+        }
+        if (table != null && table.hierarchy == hierarchy && table.handlers == handlers) {
+            table = table.rebuild();
+        } else {
+            table = DispatchTable.build(eventClass, handlers, hierarchy);
+        }
+        registry.dispatchTables.put(eventClass, table);
+        return table;
+    }
+
+    private HandlerList getSupertypeList(Class<?> type) {
+        HandlerList handlerList = registry.supertypeLists.get(type);
+        if (handlerList != null) {
+            return handlerList;
+        }
+        synchronized (registry.supertypeLists) {
+            handlerList = registry.supertypeLists.get(type);
+            if (handlerList == null) {
+                // the default bus shares its lists with the static HandlerList methods, like the lists of the event classes
+                handlerList = new HandlerList(localLists == null);
+                registry.supertypeLists.put(type, handlerList);
+                registry.hierarchy = registry.hierarchy.with(type, handlerList);
+            }
+            return handlerList;
+        }
+    }
+
+    /**
+     * Start or stop recording dispatch metrics.
+     * <p>
+     * Metrics are disabled by default, when disabled they cost a single volatile read per dispatch.
+     *
+     * @param enabled true to record metrics
+     */
+    public synchronized void setMetricsEnabled(boolean enabled) {
+        if (enabled == (eventMetrics != null)) {
+            return;
+        }
+        eventMetrics = enabled ? new ConcurrentHashMap<>() : null;
+        for (HandlerList handlerList : registry.usedLists) {
+            for (Subscription<?> subscription : handlerList.getRegisteredListeners()) {
+                subscription.setMetricsEnabled(enabled);
+            }
+        }
+    }
+
+    public boolean isMetricsEnabled() {
+        return eventMetrics != null;
+    }
+
+    /**
+     * Start or stop compiled dispatch.
+     * <p>
+     * With compiled dispatch, the subscribers of each event class are composed into a single method handle whenever they change,
+     * with the filters and handler of every simple subscriber bound into it, so hot event types get their own inlined dispatch.
+     * It is not used while metrics are enabled, for parallel priorities, for keyed subscribers,
+     * or for more than 64 subscribers. Batches are not compiled.
+     *
+     * @param enabled true to compile the subscribers
+     */
+    public synchronized void setCompiledDispatch(boolean enabled) {
+        if (enabled == (compiledDispatchers != null)) {
+            return;
+        }
+        compiledDispatchers = enabled ? new ConcurrentHashMap<>() : null;
+    }
+
+    public boolean isCompiledDispatch() {
+        return compiledDispatchers != null;
+    }
+
+    /**
+     * Set the journal events are appended to before their subscribers are called.
+     * <p>
+     * Only events with a serializer registered to the journal are appended, replaying the journal does not append the events again.
+     *
+     * @param journal the journal, or null to stop journaling
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Run the listeners of a priority in parallel for every event type.
+     * <p>
+     * Listeners of a parallel priority are executed concurrently on the fan out pool,
+     * the listeners of the next priority only start once all of them have been executed.
+     * For a batch, each of them handles the events of the batch in order, concurrently with the other listeners of the priority.
+     *
+     * @param priority the priority
+     * @param parallel true to run its listeners in parallel
+     */
+    public synchronized void setParallel(@NotNull EventPriority priority, boolean parallel) {
+        int bit = 1 << priority.getSlot();
+        parallelSlots = parallel ? parallelSlots | bit : parallelSlots & ~bit;
+    }
+
+    /**
+     * Run the listeners of an event type in parallel within every priority, see {@link #setParallel(EventPriority, boolean)}.
+     *
+     * @param eventClass the event class
+     * @param parallel   true to run its listeners in parallel
+     */
+    public void setParallel(@NotNull Class<? extends Event> eventClass, boolean parallel) {
+        Objects.requireNonNull(eventClass, "eventClass");
+        if (parallel) {
+            parallelTypes.add(eventClass);
+        } else {
+            parallelTypes.remove(eventClass);
+        }
+    }
+
+    /**
+     * Take a snapshot of the dispatch metrics.
+     *
+     * @return the snapshot, empty if metrics are disabled
+     */
+    @NotNull
+    public MetricsSnapshot getMetrics() {
+        Map<Class<? extends Event>, EventMetrics.Snapshot> events = new HashMap<>();
+        Map<Subscription<?>, SubscriptionMetrics.Snapshot> subscriptions = new IdentityHashMap<>();
+        ConcurrentHashMap<Class<? extends Event>, EventMetrics> eventMetrics = this.eventMetrics;
+        if (eventMetrics != null) {
+            eventMetrics.forEach((type, metrics) -> events.put(type, metrics.snapshot()));
+            for (HandlerList handlerList : registry.usedLists) {
+                for (Subscription<?> subscription : handlerList.getRegisteredListeners()) {
+                    SubscriptionMetrics metrics = subscription.getMetrics();
+                    if (metrics != null) {
+                        subscriptions.put(subscription, metrics.snapshot());
+                    }
+                }
+            }
+        }
+        return new MetricsSnapshot(events, subscriptions);
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBus{" + name + "}";
+    }
+
+    /**
+     * Cancel the delayed and periodic calls of this bus and shut down the threads created for {@link Builder#threads(int)},
+     * tasks already submitted still run.
+     * <p>
+     * Calls scheduled afterwards and async calls on those threads are rejected. Executors and pools given to the builder are not shut down,
+     * and synchronous calls keep working.
+     */
+    @Override
+    public void close() {
+        scheduler.close();
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private static ExecutorService newFixedThreadPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-async-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static HandlerList resolveHandlerList(Class<? extends Event> eventClass) {
+        for (Class<?> type = eventClass; type != null && Event.class.isAssignableFrom(type); type = type.getSuperclass()) {
+            final Method method;
+            try {
+                method = type.getDeclaredMethod("getHandlerList");
+            } catch (NoSuchMethodException e) {
+                continue;
+            }
+            if (!Modifier.isStatic(method.getModifiers()) || !HandlerList.class.isAssignableFrom(method.getReturnType())) {
+                throw new IllegalArgumentException(type.getName() + ".getHandlerList() must be static and return a HandlerList");
+            }
+            try {
+                method.setAccessible(true);
+                HandlerList handlerList = (HandlerList) method.invoke(null);
+                if (handlerList == null) {
+                    throw new IllegalArgumentException(type.getName() + ".getHandlerList() returned null");
+                }
+                return handlerList;
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Failed to get the handler list of " + type.getName(), e.getCause());
+            } catch (IllegalAccessException | SecurityException e) {
+                throw new IllegalStateException("Failed to get the handler list of " + type.getName(), e);
+            }
+        }
+        throw new IllegalArgumentException("Unable to find a static getHandlerList method for event " + eventClass.getName());
+    }
+
+    /**
+     * Compares owners by identity, so a listener object is only matched by itself.
+     */
+    static final class Owner {
+
+        private final Object owner;
+
+        Owner(Object owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Owner && ((Owner) other).owner == owner;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(owner);
+        }
+    }
+
+    /**
+     * Executes a range of listeners of the same priority, splitting it in halves.
+     */
+    private static final class FanOut extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Consumer<Subscription<?>> action;
+        private final Subscription<?>[] listeners;
+        private final int from;
+        private final int to;
+
+        FanOut(Consumer<Subscription<?>> action, Subscription<?>[] listeners, int from, int to) {
+            this.action = action;
+            this.listeners = listeners;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(listeners[from]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FanOut(action, listeners, from, middle), new FanOut(action, listeners, middle, to));
+        }
+    }
+
+    public static final class Builder {
+
+        private String name = "bus";
+        private Executor executor = ForkJoinPool.commonPool();
+        private int threads;
+        private boolean metrics;
+        private boolean compiledDispatch;
+        private int stripes = DEFAULT_STRIPES;
+        private ForkJoinPool fanOutPool = ForkJoinPool.commonPool();
+        private Journal journal;
+        private HashedWheelTimer timer;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the name of the bus, used for its threads.
+         *
+         * @param name the name
+         */
+        public Builder name(@NotNull String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Set the executor async events are called on, the common pool by default.
+         * <p>
+         * On newer JDKs this can be a virtual thread per task executor.
+         *
+         * @param executor the executor
+         */
+        public Builder executor(@NotNull Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor");
+            this.threads = 0;
+            return this;
+        }
+
+        /**
+         * Call async events on a fixed pool of daemon threads owned by the bus, shut down by {@link EventBus#close()}.
+         *
+         * @param threads the amount of threads
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads < 1");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Set the amount of stripes partitioned async events are spread over, twice the amount of processors by default.
+         *
+         * @param stripes the amount of stripes, rounded up to a power of two
+         */
+        public Builder stripes(int stripes) {
+            if (stripes < 1) {
+                throw new IllegalArgumentException("stripes < 1");
+            }
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Set the pool parallel listeners are executed on, the common pool by default.
+         *
+         * @param fanOutPool the pool
+         */
+        public Builder fanOutPool(@NotNull ForkJoinPool fanOutPool) {
+            this.fanOutPool = Objects.requireNonNull(fanOutPool, "fanOutPool");
+            return this;
+        }
+
+        /**
+         * Append events to a journal before calling them, see {@link EventBus#setJournal(Journal)}.
+         *
+         * @param journal the journal
+         */
+        public Builder journal(@NotNull Journal journal) {
+            this.journal = Objects.requireNonNull(journal, "journal");
+            return this;
+        }
+
+        /**
+         * Set the timer delayed and periodic events are scheduled on, the shared timer by default.
+         *
+         * @param timer the timer
+         */
+        public Builder timer(@NotNull HashedWheelTimer timer) {
+            this.timer = Objects.requireNonNull(timer, "timer");
+            return this;
+        }
+
+        /**
+         * Record dispatch metrics from the start.
+         */
+        public Builder metrics() {
+            this.metrics = true;
+            return this;
+        }
+
+        /**
+         * Compile the subscribers of each event class, see {@link EventBus#setCompiledDispatch(boolean)}.
+         */
+        public Builder compiledDispatch() {
+            this.compiledDispatch = true;
+            return this;
+        }
+
+        @NotNull
+        public EventBus build() {
+            return new EventBus(this);
+        }
     }
-}
\ No newline at end of file
+}
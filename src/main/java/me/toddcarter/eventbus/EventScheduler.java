@@ -0,0 +1,145 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.timer.HashedWheelTimer;
+import me.toddcarter.timer.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Schedules calls of a bus on a hashed timing wheel.
+ * <p>
+ * The timer thread only queues the calls that are due, they are drained on the executor of the bus
+ * and the events of every drain are called as one batch.
+ */
+final class EventScheduler {
+
+    /**
+     * The largest amount of events called in one batch.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private final EventBus bus;
+    private final Executor executor;
+    private final HashedWheelTimer timer;
+    private final Queue<ScheduledCall> due = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * The calls that have not been cancelled or called yet, cancelled when the scheduler is closed.
+     */
+    private final Set<ScheduledCall> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    EventScheduler(EventBus bus, Executor executor, HashedWheelTimer timer) {
+        this.bus = bus;
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    ScheduledCall schedule(Supplier<? extends Event> supplier, long delayNanos, long periodNanos) {
+        ScheduledCall call = new ScheduledCall(supplier, System.nanoTime() + delayNanos, periodNanos, pending);
+        pending.add(call);
+        if (closed) {
+            call.cancel();
+            throw new RejectedExecutionException("The bus is closed");
+        }
+        call.setTimeout(timer.newTimeout(timeout -> expired(call), delayNanos, TimeUnit.NANOSECONDS));
+        return call;
+    }
+
+    /**
+     * Cancel every pending call, calls scheduled afterwards are rejected.
+     */
+    void close() {
+        closed = true;
+        for (ScheduledCall call : pending) {
+            call.cancel();
+        }
+        ScheduledCall call;
+        while ((call = due.poll()) != null) {
+            call.cancel();
+        }
+    }
+
+    private void expired(ScheduledCall call) {
+        if (call.isCancelled()) {
+            return;
+        }
+        if (call.isPeriodic()) {
+            reschedule(call);
+        }
+        due.add(call);
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // the executor was shut down, the due calls could never run
+                ScheduledCall rejected;
+                while ((rejected = due.poll()) != null) {
+                    rejected.cancel();
+                }
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Schedule the next call at a fixed rate, skipping the periods that have already passed.
+     */
+    private void reschedule(ScheduledCall call) {
+        long period = call.getPeriodNanos();
+        long now = System.nanoTime();
+        long next = call.deadline + period;
+        if (next - now <= 0) {
+            next += ((now - next) / period + 1) * period;
+        }
+        call.deadline = next;
+        Timeout timeout = timer.newTimeout(t -> expired(call), next - now, TimeUnit.NANOSECONDS);
+        call.setTimeout(timeout);
+    }
+
+    private void drain() {
+        List<Event> batch = new ArrayList<>();
+        do {
+            ScheduledCall call;
+            while ((call = due.poll()) != null) {
+                try {
+                    Event event = call.next();
+                    if (event != null) {
+                        batch.add(event);
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    call(batch);
+                }
+            }
+            call(batch);
+            draining.set(false);
+        } while (!due.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void call(List<Event> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            bus.callSyncBatch(batch);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        batch.clear();
+    }
+}
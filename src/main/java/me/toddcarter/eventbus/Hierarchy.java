@@ -0,0 +1,77 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.HandlerList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The immutable set of supertypes that have hierarchical subscriptions, replaced when a new supertype is subscribed to.
+ */
+final class Hierarchy {
+
+    static final Hierarchy EMPTY = new Hierarchy(new Class<?>[0], new HandlerList[0]);
+
+    private final Class<?>[] types;
+    private final HandlerList[] lists;
+
+    private Hierarchy(Class<?>[] types, HandlerList[] lists) {
+        this.types = types;
+        this.lists = lists;
+    }
+
+    boolean isEmpty() {
+        return types.length == 0;
+    }
+
+    /**
+     * Add a supertype, more specific types are kept first.
+     *
+     * @param type the supertype
+     * @param list the handler list of its subscriptions
+     * @return the new hierarchy
+     */
+    Hierarchy with(Class<?> type, HandlerList list) {
+        int depth = depth(type);
+        int index = 0;
+        while (index < types.length && depth(types[index]) >= depth) {
+            index++;
+        }
+        Class<?>[] types = new Class<?>[this.types.length + 1];
+        HandlerList[] lists = new HandlerList[this.lists.length + 1];
+        System.arraycopy(this.types, 0, types, 0, index);
+        System.arraycopy(this.lists, 0, lists, 0, index);
+        types[index] = type;
+        lists[index] = list;
+        System.arraycopy(this.types, index, types, index + 1, this.types.length - index);
+        System.arraycopy(this.lists, index, lists, index + 1, this.lists.length - index);
+        return new Hierarchy(types, lists);
+    }
+
+    /**
+     * Get the handler lists of every subscribed supertype of an event class.
+     *
+     * @param eventClass the concrete event class
+     * @return the handler lists, most specific supertype first
+     */
+    HandlerList[] listsFor(Class<?> eventClass) {
+        List<HandlerList> matching = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].isAssignableFrom(eventClass)) {
+                matching.add(lists[i]);
+            }
+        }
+        return matching.toArray(new HandlerList[0]);
+    }
+
+    private static int depth(Class<?> type) {
+        if (type.isInterface()) {
+            return 0;
+        }
+        int depth = 1;
+        for (Class<?> superclass = type.getSuperclass(); superclass != null; superclass = superclass.getSuperclass()) {
+            depth++;
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,13 @@
+package me.toddcarter.eventbus;
+
+public enum ProducerType {
+
+    /**
+     * Only a single thread publishes, claiming a slot does not need a compare and swap.
+     */
+    SINGLE,
+    /**
+     * Any thread can publish.
+     */
+    MULTI
+}
@@ -0,0 +1,41 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.subscription.Subscription;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registration state of a bus besides the handler lists of its event classes.
+ * <p>
+ * Buses created with {@link EventBus#EventBus()} share the handler lists of the event classes, so they share this state too.
+ */
+final class Registry {
+
+    /**
+     * The state of every bus sharing the static handler lists.
+     */
+    static final Registry SHARED = new Registry();
+
+    /**
+     * Handler lists of the subscriptions that include subtypes, by subscribed type.
+     */
+    final ConcurrentHashMap<Class<?>, HandlerList> supertypeLists = new ConcurrentHashMap<>();
+    volatile Hierarchy hierarchy = Hierarchy.EMPTY;
+
+    /**
+     * Dispatch tables per concrete event class, only used when there are subscriptions that include subtypes.
+     */
+    final ConcurrentHashMap<Class<?>, DispatchTable> dispatchTables = new ConcurrentHashMap<>();
+
+    /**
+     * Every handler list subscriptions have been registered to.
+     */
+    final Set<HandlerList> usedLists = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The registered subscriptions of every owner by identity, expired subscriptions are pruned as owners register more.
+     */
+    final ConcurrentHashMap<EventBus.Owner, Set<Subscription<?>>> owners = new ConcurrentHashMap<>();
+}
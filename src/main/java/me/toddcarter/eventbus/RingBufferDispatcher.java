@@ -0,0 +1,329 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.Event;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Calls events on dedicated consumer threads through a preallocated ring buffer.
+ * <p>
+ * Publishing does not allocate and the buffer is bounded, producers wait using the wait strategy when it is full.
+ * With a single consumer events are called in the order they were published,
+ * with several consumers each event is called by exactly one of them.
+ */
+public final class RingBufferDispatcher implements AutoCloseable {
+
+    private final EventBus bus;
+    private final Event[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final ProducerType producerType;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * The round of the sequence last published to each slot.
+     */
+    private final AtomicIntegerArray available;
+
+    /**
+     * The last sequence claimed by a producer.
+     */
+    private final Sequence claimed = new Sequence(-1);
+
+    /**
+     * The last sequence claimed by a consumer.
+     */
+    private final Sequence workSequence = new Sequence(-1);
+
+    /**
+     * The lowest consumer sequence seen by the producers, so they do not have to read every consumer on each claim.
+     */
+    private final Sequence gatingCache = new Sequence(-1);
+
+    private final Consumer[] consumers;
+    private volatile boolean running = true;
+
+    private RingBufferDispatcher(Builder builder) {
+        this.bus = builder.bus;
+        this.entries = new Event[builder.bufferSize];
+        this.mask = builder.bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(builder.bufferSize);
+        this.producerType = builder.producerType;
+        this.waitStrategy = builder.waitStrategy;
+        this.available = new AtomicIntegerArray(builder.bufferSize);
+        for (int i = 0; i < builder.bufferSize; i++) {
+            available.lazySet(i, -1);
+        }
+        this.consumers = new Consumer[builder.consumers];
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = new Consumer();
+        }
+        ThreadFactory threadFactory = builder.threadFactory != null ? builder.threadFactory : daemonThreadFactory(bus.getName() + "-ring");
+        for (Consumer consumer : consumers) {
+            Thread thread = threadFactory.newThread(consumer);
+            consumer.thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Create a builder for a dispatcher calling events on a bus.
+     *
+     * @param bus the bus to call the events on
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder(@NotNull EventBus bus) {
+        return new Builder(bus);
+    }
+
+    /**
+     * Publish an event, waiting for a free slot if the buffer is full.
+     *
+     * @param event the event to call
+     * @throws IllegalStateException if the dispatcher has been closed
+     */
+    public void publish(@NotNull Event event) {
+        Objects.requireNonNull(event, "event");
+        publish(claim(true), event);
+    }
+
+    /**
+     * Publish an event if there is a free slot.
+     *
+     * @param event the event to call
+     * @return false if the buffer was full
+     * @throws IllegalStateException if the dispatcher has been closed
+     */
+    public boolean tryPublish(@NotNull Event event) {
+        Objects.requireNonNull(event, "event");
+        long sequence = claim(false);
+        if (sequence < 0) {
+            return false;
+        }
+        publish(sequence, event);
+        return true;
+    }
+
+    /**
+     * Get the amount of free slots.
+     *
+     * @return the remaining capacity
+     */
+    public long remainingCapacity() {
+        return entries.length - (claimed.get() - minimumConsumerSequence(claimed.get()));
+    }
+
+    /**
+     * Stop accepting events, wait until every published event has been called and stop the consumers.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        long last = claimed.get();
+        int attempt = 0;
+        while (minimumConsumerSequence(last) < last || !isAvailable(last)) {
+            waitStrategy.idle(attempt++);
+        }
+        running = false;
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long claim(boolean wait) {
+        int attempt = 0;
+        while (true) {
+            if (!running) {
+                throw new IllegalStateException("The dispatcher has been closed");
+            }
+            long current = claimed.get();
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > gatingCache.get()) {
+                long minimum = minimumConsumerSequence(current);
+                if (wrapPoint > minimum) {
+                    if (!wait) {
+                        return -1;
+                    }
+                    waitStrategy.idle(attempt++);
+                    continue;
+                }
+                gatingCache.set(minimum);
+            }
+            if (producerType == ProducerType.SINGLE) {
+                claimed.set(next);
+                return next;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private void publish(long sequence, Event event) {
+        int index = (int) sequence & mask;
+        entries[index] = event;
+        available.lazySet(index, (int) (sequence >>> indexShift));
+    }
+
+    private boolean isAvailable(long sequence) {
+        return sequence < 0 || available.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    private long minimumConsumerSequence(long minimum) {
+        for (Consumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A consumer thread claiming sequences from the shared work sequence.
+     */
+    private final class Consumer implements Runnable {
+
+        /**
+         * Every sequence up to this one has been called by this consumer.
+         */
+        final Sequence sequence = new Sequence(-1);
+        Thread thread;
+
+        @Override
+        public void run() {
+            boolean processed = true;
+            long next = 0;
+            int attempt = 0;
+            while (true) {
+                if (processed) {
+                    processed = false;
+                    do {
+                        next = workSequence.get() + 1;
+                        sequence.set(next - 1);
+                    } while (!workSequence.compareAndSet(next - 1, next));
+                }
+                if (isAvailable(next)) {
+                    int index = (int) next & mask;
+                    Event event = entries[index];
+                    entries[index] = null;
+                    try {
+                        bus.callSync(event);
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                    processed = true;
+                    attempt = 0;
+                } else if (!running && next > claimed.get()) {
+                    // every claimed sequence has been called
+                    sequence.set(Long.MAX_VALUE);
+                    return;
+                } else {
+                    waitStrategy.idle(attempt++);
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private final EventBus bus;
+        private int bufferSize = 1 << 16;
+        private ProducerType producerType = ProducerType.MULTI;
+        private WaitStrategy waitStrategy = WaitStrategy.PARKING;
+        private int consumers = 1;
+        private ThreadFactory threadFactory;
+
+        private Builder(EventBus bus) {
+            this.bus = Objects.requireNonNull(bus, "bus");
+        }
+
+        /**
+         * Set the amount of slots, 65536 by default.
+         *
+         * @param bufferSize the amount of slots, must be a power of two
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+                throw new IllegalArgumentException("bufferSize must be a power of two");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Set whether one or many threads publish, many by default.
+         *
+         * @param producerType the producer type
+         */
+        public Builder producerType(@NotNull ProducerType producerType) {
+            this.producerType = Objects.requireNonNull(producerType, "producerType");
+            return this;
+        }
+
+        /**
+         * Set how consumers wait for events and producers wait for free slots, parking by default.
+         *
+         * @param waitStrategy the wait strategy
+         */
+        public Builder waitStrategy(@NotNull WaitStrategy waitStrategy) {
+            this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy");
+            return this;
+        }
+
+        /**
+         * Set the amount of consumer threads, one by default which keeps the events in order.
+         *
+         * @param consumers the amount of consumer threads
+         */
+        public Builder consumers(int consumers) {
+            if (consumers < 1) {
+                throw new IllegalArgumentException("consumers < 1");
+            }
+            this.consumers = consumers;
+            return this;
+        }
+
+        /**
+         * Set the factory for the consumer threads, daemon threads named after the bus by default.
+         *
+         * @param threadFactory the thread factory
+         */
+        public Builder threadFactory(@NotNull ThreadFactory threadFactory) {
+            this.threadFactory = Objects.requireNonNull(threadFactory, "threadFactory");
+            return this;
+        }
+
+        /**
+         * Create the dispatcher and start its consumer threads.
+         *
+         * @return the dispatcher
+         */
+        @NotNull
+        public RingBufferDispatcher build() {
+            return new RingBufferDispatcher(this);
+        }
+    }
+}
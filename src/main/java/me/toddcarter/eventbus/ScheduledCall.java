@@ -0,0 +1,103 @@
+package me.toddcarter.eventbus;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.timer.Timeout;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The handle of an event scheduled with {@link EventBus#callLater(Event, long, java.util.concurrent.TimeUnit)}
+ * or {@link EventBus#callEvery(Supplier, long, java.util.concurrent.TimeUnit)}.
+ */
+public final class ScheduledCall {
+
+    private static final int SCHEDULED = 0;
+    private static final int CANCELLED = 1;
+    private static final int DONE = 2;
+
+    private final Supplier<? extends Event> supplier;
+    private final long periodNanos;
+    private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+
+    /**
+     * The pending calls of the scheduler, the call leaves them once cancelled or called.
+     */
+    private final Set<ScheduledCall> pending;
+
+    /**
+     * The deadline of the pending timeout in nanoTime, only accessed by the timer thread after scheduling.
+     */
+    long deadline;
+    private volatile Timeout timeout;
+
+    ScheduledCall(Supplier<? extends Event> supplier, long deadline, long periodNanos, Set<ScheduledCall> pending) {
+        this.supplier = supplier;
+        this.deadline = deadline;
+        this.periodNanos = periodNanos;
+        this.pending = pending;
+    }
+
+    /**
+     * Cancel the call, a periodic call is not called again.
+     *
+     * @return false if the call was already cancelled or has been called
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(SCHEDULED, CANCELLED)) {
+            return false;
+        }
+        pending.remove(this);
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * Whether the call has been called, periodic calls are never done.
+     *
+     * @return true once a delayed call has been called
+     */
+    public boolean isDone() {
+        return state.get() == DONE;
+    }
+
+    public boolean isPeriodic() {
+        return periodNanos != 0;
+    }
+
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+        if (state.get() == CANCELLED) {
+            // cancelled while the timeout was being replaced
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Get the event to call now.
+     *
+     * @return the event, or null if the call was cancelled or the supplier returned null
+     */
+    Event next() {
+        if (periodNanos == 0) {
+            if (!state.compareAndSet(SCHEDULED, DONE)) {
+                return null;
+            }
+            pending.remove(this);
+            return supplier.get();
+        }
+        return state.get() == SCHEDULED ? supplier.get() : null;
+    }
+}
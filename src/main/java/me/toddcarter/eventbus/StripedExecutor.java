@@ -0,0 +1,115 @@
+package me.toddcarter.eventbus;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks on an executor in a fixed set of stripes chosen by key.
+ * <p>
+ * Tasks in the same stripe run one at a time in the order they were submitted, so tasks with equal keys are ordered.
+ * Different stripes run in parallel on the underlying executor.
+ */
+public final class StripedExecutor {
+
+    /**
+     * The amount of tasks a stripe runs before yielding its thread to the other stripes.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * Create a striped executor.
+     *
+     * @param executor the executor to run the stripes on
+     * @param stripes  the amount of stripes, rounded up to a power of two
+     */
+    public StripedExecutor(@NotNull Executor executor, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes < 1");
+        }
+        this.executor = Objects.requireNonNull(executor, "executor");
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Run a task after every task previously submitted to the same stripe.
+     *
+     * @param key  the key choosing the stripe, compared with hashCode
+     * @param task the task to run
+     * @throws RejectedExecutionException if the underlying executor rejected the stripe
+     */
+    public void execute(Object key, @NotNull Runnable task) {
+        Objects.requireNonNull(task, "task");
+        stripes[stripeOf(key)].submit(task);
+    }
+
+    /**
+     * Get the amount of stripes.
+     *
+     * @return the amount of stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    private int stripeOf(Object key) {
+        int hash = Objects.hashCode(key);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private final class Stripe implements Runnable {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void submit(Runnable task) {
+            queue.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                for (int i = 0; i < BATCH_SIZE && (task = queue.poll()) != null; i++) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // a task may have been submitted after the last poll
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package me.toddcarter.eventbus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a ring buffer consumer waits for events, and how a producer waits for a free slot.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin on the sequence, lowest latency but keeps a core busy.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) {
+        }
+    },
+    /**
+     * Spin briefly, then yield the thread.
+     */
+    YIELDING {
+        @Override
+        void idle(int attempt) {
+            if (attempt > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spin and yield briefly, then park the thread, the lowest CPU usage when idle.
+     */
+    PARKING {
+        @Override
+        void idle(int attempt) {
+            if (attempt > SPIN_TRIES * 2) {
+                LockSupport.parkNanos(PARK_NANOS);
+            } else if (attempt > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Wait once.
+     *
+     * @param attempt the amount of times waited in a row
+     */
+    abstract void idle(int attempt);
+}
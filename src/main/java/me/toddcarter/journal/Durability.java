@@ -0,0 +1,24 @@
+package me.toddcarter.journal;
+
+/**
+ * How far a journaled event is persisted before the caller continues.
+ */
+public enum Durability {
+
+    /**
+     * Events are written to the mapped segment and flushed to disk by the operating system,
+     * they survive the process crashing but not the machine.
+     */
+    NONE,
+
+    /**
+     * Events are flushed to disk by a background thread every flush interval, the caller never waits.
+     */
+    ASYNC,
+
+    /**
+     * The caller waits until its event has been flushed to disk.
+     * Concurrent callers are flushed together, so a single flush commits the whole group.
+     */
+    SYNC
+}
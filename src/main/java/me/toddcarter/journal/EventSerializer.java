@@ -0,0 +1,27 @@
+package me.toddcarter.journal;
+
+import me.toddcarter.event.Event;
+
+/**
+ * Converts events of a single class to and from bytes for the journal.
+ *
+ * @param <T> the event class
+ */
+public interface EventSerializer<T extends Event> {
+
+    /**
+     * Serialize an event.
+     *
+     * @param event the event
+     * @return the bytes to journal
+     */
+    byte[] serialize(T event);
+
+    /**
+     * Deserialize an event written by {@link #serialize(Event)}.
+     *
+     * @param data the journaled bytes
+     * @return the event
+     */
+    T deserialize(byte[] data);
+}
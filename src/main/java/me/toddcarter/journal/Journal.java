@@ -0,0 +1,567 @@
+package me.toddcarter.journal;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.eventbus.EventBus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append only journal of events, stored in memory mapped segment files.
+ * <p>
+ * A bus with a journal appends every event with a registered serializer before calling its subscribers.
+ * Each record is given a sequence number and a timestamp, and can be replayed through a bus by sequence or time range.
+ * <p>
+ * Records are laid out as length, checksum, type id, sequence, timestamp and payload. The length is written last,
+ * so a record torn by a crash reads as the end of the journal and is dropped when the journal is opened again.
+ */
+public final class Journal implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 28;
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final Map<Class<?>, Registration<?>> byClass;
+    private final Map<Integer, Registration<?>> byTypeId;
+
+    /**
+     * Set on the threads replaying the journal, so replayed events are not journaled again.
+     */
+    private final ThreadLocal<Boolean> replaying = new ThreadLocal<>();
+
+    /**
+     * The segment being written and the next sequence, only accessed while holding the lock of this journal.
+     */
+    private Segment current;
+    private long nextSequence;
+    private boolean closed;
+
+    /**
+     * Full segments that have not been forced to disk by the flusher yet, only accessed while holding the lock of this journal.
+     */
+    private final List<Segment> rolled = new ArrayList<>();
+
+    private final Object flushLock = new Object();
+
+    /**
+     * The last sequence flushed to disk, only accessed while holding the flush lock.
+     */
+    private long flushedSequence;
+    private boolean flushRequested;
+    private final Thread flusher;
+
+    private Journal(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.durability = builder.durability;
+        this.flushIntervalNanos = builder.flushIntervalNanos;
+        this.byClass = new HashMap<>(builder.byClass);
+        this.byTypeId = new HashMap<>(builder.byTypeId);
+        Files.createDirectories(directory);
+        recover();
+        this.flushedSequence = nextSequence - 1;
+        if (durability == Durability.NONE) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::runFlusher, "journal-flusher-" + directory.getFileName());
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Create a builder for a journal stored in a directory.
+     *
+     * @param directory the directory of the segment files, created if missing
+     * @return the builder
+     */
+    @NotNull
+    public static Builder builder(@NotNull Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Append an event if a serializer is registered for its class.
+     * <p>
+     * With {@link Durability#SYNC} this waits until the event has been flushed to disk.
+     * Events replayed from this journal are not appended again.
+     *
+     * @param event the event
+     * @return the sequence of the record, or -1 if the event was not journaled
+     * @throws UncheckedIOException if the journal could not be written
+     * @throws IllegalStateException if the journal has been closed
+     */
+    @SuppressWarnings("unchecked")
+    public long append(@NotNull Event event) {
+        Registration<Event> registration = (Registration<Event>) byClass.get(event.getClass());
+        if (registration == null || replaying.get() != null) {
+            return -1;
+        }
+        byte[] payload = registration.serializer.serialize(event);
+        int length = HEADER_SIZE + payload.length;
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("The serialized event is larger than a segment: " + length + " bytes");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The journal has been closed");
+            }
+            if (current.remaining() < length) {
+                roll();
+            }
+            sequence = nextSequence++;
+            current.write(length, (int) crc.getValue(), registration.typeId, sequence, System.currentTimeMillis(), payload);
+        }
+        if (durability == Durability.SYNC) {
+            awaitFlushed(sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * Whether events of a class are appended to this journal.
+     *
+     * @param eventClass the event class
+     * @return true if a serializer is registered for the class
+     */
+    public boolean isJournaled(@NotNull Class<?> eventClass) {
+        return byClass.containsKey(eventClass);
+    }
+
+    /**
+     * Replay the records within a sequence range through a bus, on the calling thread.
+     *
+     * @param bus          the bus to call the events on
+     * @param fromSequence the first sequence, inclusive
+     * @param toSequence   the last sequence, inclusive
+     * @return the amount of events replayed
+     */
+    public long replay(@NotNull EventBus bus, long fromSequence, long toSequence) {
+        return replay(bus, fromSequence, toSequence, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Replay the records written within a time range through a bus, on the calling thread.
+     *
+     * @param bus        the bus to call the events on
+     * @param fromMillis the first timestamp in epoch milliseconds, inclusive
+     * @param toMillis   the last timestamp in epoch milliseconds, inclusive
+     * @return the amount of events replayed
+     */
+    public long replayTimeRange(@NotNull EventBus bus, long fromMillis, long toMillis) {
+        return replay(bus, 0, Long.MAX_VALUE, fromMillis, toMillis);
+    }
+
+    private long replay(EventBus bus, long fromSequence, long toSequence, long fromMillis, long toMillis) {
+        Objects.requireNonNull(bus, "bus");
+        List<Long> segments;
+        Segment active;
+        int activeEnd;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The journal has been closed");
+            }
+            segments = listSegments();
+            active = current;
+            activeEnd = current.buffer.position();
+        }
+        long replayed = 0;
+        replaying.set(Boolean.TRUE);
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                long base = segments.get(i);
+                if (base > toSequence) {
+                    break;
+                }
+                if (i + 1 < segments.size() && segments.get(i + 1) <= fromSequence) {
+                    continue;
+                }
+                ByteBuffer buffer;
+                if (base == active.baseSequence) {
+                    buffer = active.buffer.duplicate();
+                    buffer.limit(activeEnd);
+                } else {
+                    buffer = map(segmentPath(base), FileChannel.MapMode.READ_ONLY);
+                }
+                replayed += replaySegment(bus, buffer, base, fromSequence, toSequence, fromMillis, toMillis);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            replaying.remove();
+        }
+        return replayed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long replaySegment(EventBus bus, ByteBuffer buffer, long baseSequence, long fromSequence, long toSequence, long fromMillis, long toMillis) {
+        long replayed = 0;
+        int position = 0;
+        long sequence = baseSequence;
+        int length;
+        while (sequence <= toSequence && (length = recordLength(buffer, position, sequence)) != 0) {
+            long timestamp = buffer.getLong(position + 20);
+            if (sequence >= fromSequence && timestamp >= fromMillis && timestamp <= toMillis) {
+                Registration<Event> registration = (Registration<Event>) byTypeId.get(buffer.getInt(position + 8));
+                if (registration == null) {
+                    throw new IllegalStateException("No serializer is registered for type id " + buffer.getInt(position + 8));
+                }
+                byte[] payload = new byte[length - HEADER_SIZE];
+                ByteBuffer record = buffer.duplicate();
+                record.position(position + HEADER_SIZE);
+                record.get(payload);
+                bus.callSync(registration.serializer.deserialize(payload));
+                replayed++;
+            }
+            position += length;
+            sequence++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Flush every appended event to disk.
+     */
+    public void flush() {
+        Segment segment;
+        List<Segment> full;
+        long written;
+        synchronized (this) {
+            segment = current;
+            written = nextSequence - 1;
+            full = new ArrayList<>(rolled);
+            rolled.clear();
+        }
+        for (Segment previous : full) {
+            previous.buffer.force();
+        }
+        segment.buffer.force();
+        synchronized (flushLock) {
+            if (written > flushedSequence) {
+                flushedSequence = written;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Get the sequence the next event will be given.
+     *
+     * @return the next sequence
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Flush the journal and stop its flusher, appending afterwards throws.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private void awaitFlushed(long sequence) {
+        synchronized (flushLock) {
+            while (flushedSequence < sequence) {
+                flushRequested = true;
+                flushLock.notifyAll();
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted whilst waiting for the journal to be flushed", e);
+                }
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (flushLock) {
+                if (!flushRequested) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(flushLock, flushIntervalNanos);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                flushRequested = false;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Start the next segment, must be called while holding the lock of this journal.
+     * <p>
+     * The full segment is forced by the flusher, or left to the operating system without durability.
+     */
+    private void roll() {
+        if (durability != Durability.NONE) {
+            rolled.add(current);
+        }
+        try {
+            current = new Segment(nextSequence, map(segmentPath(nextSequence), FileChannel.MapMode.READ_WRITE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open the last segment and find the end of its valid records.
+     */
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        if (segments.isEmpty()) {
+            current = new Segment(0, map(segmentPath(0), FileChannel.MapMode.READ_WRITE));
+            nextSequence = 0;
+            return;
+        }
+        long base = segments.get(segments.size() - 1);
+        MappedByteBuffer buffer = map(segmentPath(base), FileChannel.MapMode.READ_WRITE);
+        long sequence = base;
+        int position = 0;
+        int length;
+        while ((length = recordLength(buffer, position, sequence)) != 0) {
+            position += length;
+            sequence++;
+        }
+        // clear everything after the last valid record, so no part of a torn record is mistaken for a valid one later
+        ByteBuffer rest = buffer.duplicate();
+        rest.position(position);
+        byte[] zeros = new byte[Math.min(rest.remaining(), 64 << 10)];
+        while (rest.hasRemaining()) {
+            rest.put(zeros, 0, Math.min(zeros.length, rest.remaining()));
+        }
+        buffer.position(position);
+        current = new Segment(base, buffer);
+        nextSequence = sequence;
+    }
+
+    /**
+     * Get the length of the record at a position if it is complete, has the expected sequence and its checksum matches.
+     * <p>
+     * Replay checks every record like recovery does, so bytes left behind a torn record are never read as events.
+     *
+     * @return the length of the record, or 0 if there is no valid record at the position
+     */
+    private static int recordLength(ByteBuffer buffer, int position, long sequence) {
+        if (position + HEADER_SIZE > buffer.limit()) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length < HEADER_SIZE || length > buffer.limit() - position || buffer.getLong(position + 12) != sequence) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(position + length);
+        payload.position(position + HEADER_SIZE);
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? length : 0;
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentPath(long baseSequence) {
+        return directory.resolve(String.format("%020d%s", baseSequence, SUFFIX));
+    }
+
+    private MappedByteBuffer map(Path path, FileChannel.MapMode mode) throws IOException {
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(mode, 0, channel.size());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, segmentSize);
+        }
+    }
+
+    /**
+     * A mapped segment file, written from its position while holding the lock of the journal.
+     */
+    private static final class Segment {
+
+        final long baseSequence;
+        final MappedByteBuffer buffer;
+
+        Segment(long baseSequence, MappedByteBuffer buffer) {
+            this.baseSequence = baseSequence;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        void write(int length, int crc, int typeId, long sequence, long timestamp, byte[] payload) {
+            int position = buffer.position();
+            buffer.putInt(position + 4, crc);
+            buffer.putInt(position + 8, typeId);
+            buffer.putLong(position + 12, sequence);
+            buffer.putLong(position + 20, timestamp);
+            buffer.position(position + HEADER_SIZE);
+            buffer.put(payload);
+            // the length is written last, it marks the record as complete
+            buffer.putInt(position, length);
+        }
+    }
+
+    private static final class Registration<T extends Event> {
+
+        final int typeId;
+        final EventSerializer<T> serializer;
+
+        Registration(int typeId, EventSerializer<T> serializer) {
+            this.typeId = typeId;
+            this.serializer = serializer;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Path directory;
+        private int segmentSize = 64 << 20;
+        private Durability durability = Durability.ASYNC;
+        private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private final Map<Class<?>, Registration<?>> byClass = new HashMap<>();
+        private final Map<Integer, Registration<?>> byTypeId = new HashMap<>();
+
+        private Builder(Path directory) {
+            this.directory = Objects.requireNonNull(directory, "directory");
+        }
+
+        /**
+         * Journal the events of a class.
+         * <p>
+         * The type id is stored with every record to find the serializer on replay, so it must not change between runs.
+         * Subclasses of the event class are not journaled unless they are registered themselves.
+         *
+         * @param typeId     the stable id of the event class
+         * @param eventClass the event class
+         * @param serializer the serializer
+         */
+        public <T extends Event> Builder serializer(int typeId, @NotNull Class<T> eventClass, @NotNull EventSerializer<T> serializer) {
+            Objects.requireNonNull(eventClass, "eventClass");
+            Objects.requireNonNull(serializer, "serializer");
+            if (byTypeId.containsKey(typeId)) {
+                throw new IllegalArgumentException("Type id " + typeId + " is already registered");
+            }
+            Registration<T> registration = new Registration<>(typeId, serializer);
+            byClass.put(eventClass, registration);
+            byTypeId.put(typeId, registration);
+            return this;
+        }
+
+        /**
+         * Set the size of each segment file, 64 MiB by default.
+         *
+         * @param segmentSize the size in bytes
+         */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize < HEADER_SIZE) {
+                throw new IllegalArgumentException("segmentSize < " + HEADER_SIZE);
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Set how far events are persisted before the caller continues, {@link Durability#ASYNC} by default.
+         *
+         * @param durability the durability
+         */
+        public Builder durability(@NotNull Durability durability) {
+            this.durability = Objects.requireNonNull(durability, "durability");
+            return this;
+        }
+
+        /**
+         * Set how often the background thread flushes events to disk, 10 milliseconds by default.
+         *
+         * @param interval the interval
+         * @param timeUnit the time unit
+         */
+        public Builder flushInterval(long interval, @NotNull TimeUnit timeUnit) {
+            Objects.requireNonNull(timeUnit, "timeUnit");
+            if (interval < 1) {
+                throw new IllegalArgumentException("interval < 1");
+            }
+            this.flushIntervalNanos = timeUnit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Open the journal, recovering the records already written to the directory.
+         *
+         * @return the journal
+         * @throws UncheckedIOException if the directory could not be read or written
+         */
+        @NotNull
+        public Journal build() {
+            try {
+                return new Journal(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package me.toddcarter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch metrics of a single event type.
+ */
+public final class EventMetrics {
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder dispatches = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Record a dispatch of the event to every subscriber.
+     *
+     * @param nanos how long the dispatch took
+     */
+    public void dispatched(long nanos) {
+        dispatches.increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * Record an exception that escaped a subscriber.
+     */
+    public void failed() {
+        exceptions.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(dispatches.sum(), exceptions.sum(), latency.snapshot(), System.nanoTime() - startTime);
+    }
+
+    public static final class Snapshot {
+
+        private final long dispatches;
+        private final long exceptions;
+        private final LatencyHistogram.Snapshot latency;
+        private final long elapsedNanos;
+
+        Snapshot(long dispatches, long exceptions, LatencyHistogram.Snapshot latency, long elapsedNanos) {
+            this.dispatches = dispatches;
+            this.exceptions = exceptions;
+            this.latency = latency;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getDispatches() {
+            return dispatches;
+        }
+
+        /**
+         * Get the average amount of dispatches per second since metrics were enabled.
+         *
+         * @return the dispatch rate
+         */
+        public double getDispatchRate() {
+            return elapsedNanos <= 0 ? 0 : dispatches * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+    }
+}
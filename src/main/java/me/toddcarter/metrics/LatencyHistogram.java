@@ -0,0 +1,107 @@
+package me.toddcarter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A contention free latency histogram with power of two nanosecond buckets.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * Take a snapshot of the recorded latencies.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, total.sum());
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+
+        Snapshot(long[] counts, long totalNanos) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucket : counts) {
+                count += bucket;
+            }
+            this.count = count;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean(TimeUnit unit) {
+            return count == 0 ? 0 : (double) totalNanos / count / unit.toNanos(1);
+        }
+
+        /**
+         * Get the upper bound of the bucket containing a percentile.
+         *
+         * @param percentile the percentile between 0 and 100
+         * @param unit       the unit of the result
+         * @return the latency at the percentile, at most twice the real value
+         */
+        public double getPercentile(double percentile, TimeUnit unit) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return (double) upperBound(i) / unit.toNanos(1);
+                }
+            }
+            return (double) upperBound(counts.length - 1) / unit.toNanos(1);
+        }
+
+        /**
+         * Get the amount of recorded latencies per bucket, bucket {@code i} holds latencies below {@code 2^i} nanoseconds.
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] getBucketCounts() {
+            return counts.clone();
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package me.toddcarter.metrics;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.subscription.Subscription;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A point in time view of the metrics of an event bus.
+ */
+public final class MetricsSnapshot {
+
+    private final Map<Class<? extends Event>, EventMetrics.Snapshot> events;
+    private final Map<Subscription<?>, SubscriptionMetrics.Snapshot> subscriptions;
+
+    public MetricsSnapshot(Map<Class<? extends Event>, EventMetrics.Snapshot> events, Map<Subscription<?>, SubscriptionMetrics.Snapshot> subscriptions) {
+        this.events = Collections.unmodifiableMap(events);
+        this.subscriptions = Collections.unmodifiableMap(subscriptions);
+    }
+
+    /**
+     * Get the metrics of every dispatched event type.
+     *
+     * @return the metrics by event class
+     */
+    @NotNull
+    public Map<Class<? extends Event>, EventMetrics.Snapshot> getEventMetrics() {
+        return events;
+    }
+
+    /**
+     * Get the metrics of every registered subscription.
+     *
+     * @return the metrics by subscription
+     */
+    @NotNull
+    public Map<Subscription<?>, SubscriptionMetrics.Snapshot> getSubscriptionMetrics() {
+        return subscriptions;
+    }
+}
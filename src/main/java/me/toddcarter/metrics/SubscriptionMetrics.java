@@ -0,0 +1,87 @@
+package me.toddcarter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch metrics of a single subscription.
+ */
+public final class SubscriptionMetrics {
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder filterRejections = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Record a call of the handler.
+     *
+     * @param nanos how long the handler took
+     */
+    public void invoked(long nanos) {
+        invocations.increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * Record an event rejected by a filter.
+     */
+    public void filterRejected() {
+        filterRejections.increment();
+    }
+
+    /**
+     * Record an event dropped by a rate limit or sampling.
+     */
+    public void throttled() {
+        throttles.increment();
+    }
+
+    /**
+     * Record an exception thrown whilst handling an event.
+     */
+    public void failed() {
+        exceptions.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(invocations.sum(), filterRejections.sum(), throttles.sum(), exceptions.sum(), latency.snapshot());
+    }
+
+    public static final class Snapshot {
+
+        private final long invocations;
+        private final long filterRejections;
+        private final long throttles;
+        private final long exceptions;
+        private final LatencyHistogram.Snapshot latency;
+
+        Snapshot(long invocations, long filterRejections, long throttles, long exceptions, LatencyHistogram.Snapshot latency) {
+            this.invocations = invocations;
+            this.filterRejections = filterRejections;
+            this.throttles = throttles;
+            this.exceptions = exceptions;
+            this.latency = latency;
+        }
+
+        public long getInvocations() {
+            return invocations;
+        }
+
+        public long getFilterRejections() {
+            return filterRejections;
+        }
+
+        public long getThrottles() {
+            return throttles;
+        }
+
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+    }
+}
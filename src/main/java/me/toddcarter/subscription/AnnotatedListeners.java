@@ -0,0 +1,193 @@
+package me.toddcarter.subscription;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.eventbus.EventBus;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Builds the subscriptions of the {@link Subscribe} methods of listener objects.
+ * <p>
+ * The methods of a class are scanned once. Public methods of public classes are invoked through a class generated by the
+ * {@link LambdaMetafactory}, which the JIT inlines like a lambda, any other method through a method handle.
+ */
+public final class AnnotatedListeners {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKED_TYPE = MethodType.methodType(void.class, Object.class);
+
+    private static final ClassValue<ListenerMethod[]> METHODS = new ClassValue<ListenerMethod[]>() {
+        @Override
+        protected ListenerMethod[] computeValue(Class<?> type) {
+            return scan(type);
+        }
+    };
+
+    private AnnotatedListeners() {
+    }
+
+    /**
+     * Build a subscription for every {@link Subscribe} method of a listener, owned by the listener.
+     * <p>
+     * The subscriptions are not registered.
+     *
+     * @param bus      the bus the subscriptions are for
+     * @param listener the listener object
+     * @return the subscriptions
+     * @throws IllegalArgumentException if the listener has no {@link Subscribe} methods, or an annotated method is static or does not take a single event parameter
+     */
+    @NotNull
+    public static List<Subscription<?>> build(@NotNull EventBus bus, @NotNull Object listener) {
+        Objects.requireNonNull(bus, "bus");
+        ListenerMethod[] methods = methods(listener);
+        List<Subscription<?>> subscriptions = new ArrayList<>(methods.length);
+        for (ListenerMethod method : methods) {
+            subscriptions.add(build(bus, method.eventClass, method, listener));
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Check that an object is a listener object.
+     *
+     * @param listener the listener object
+     * @throws IllegalArgumentException if the listener has no {@link Subscribe} methods, or an annotated method is invalid
+     */
+    public static void check(@NotNull Object listener) {
+        methods(listener);
+    }
+
+    private static ListenerMethod[] methods(Object listener) {
+        Objects.requireNonNull(listener, "listener");
+        ListenerMethod[] methods = METHODS.get(listener.getClass());
+        if (methods.length == 0) {
+            throw new IllegalArgumentException(listener.getClass().getName() + " has no @Subscribe methods");
+        }
+        return methods;
+    }
+
+    private static <T> Subscription<T> build(EventBus bus, Class<T> eventClass, ListenerMethod method, Object listener) {
+        SubscriptionBuilder<T> builder = new SubscriptionBuilder<>(bus, eventClass, method.annotation.priority()).owner(listener);
+        if (method.annotation.ignoreCancelled()) {
+            builder.ignoreCancelled();
+        }
+        return builder.build(method.bind(listener));
+    }
+
+    private static ListenerMethod[] scan(Class<?> type) {
+        List<ListenerMethod> methods = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                Subscribe annotation = method.getAnnotation(Subscribe.class);
+                if (annotation == null || method.isBridge() || method.isSynthetic()) {
+                    continue;
+                }
+                if (Modifier.isStatic(method.getModifiers())) {
+                    throw new IllegalArgumentException(method + " is static, only instance methods can be listeners");
+                }
+                Class<?>[] parameters = method.getParameterTypes();
+                if (parameters.length != 1 || !Event.class.isAssignableFrom(parameters[0])) {
+                    throw new IllegalArgumentException(method + " must take a single event parameter");
+                }
+                // an overridden method is invoked virtually through the method of the superclass
+                if (seen.add(method.getName() + '(' + parameters[0].getName() + ')')) {
+                    methods.add(new ListenerMethod(method, annotation));
+                }
+            }
+        }
+        return methods.toArray(new ListenerMethod[0]);
+    }
+
+    private static boolean isPublic(Method method) {
+        if (!Modifier.isPublic(method.getModifiers())) {
+            return false;
+        }
+        for (Class<?> type = method.getDeclaringClass(); type != null; type = type.getEnclosingClass()) {
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> RuntimeException sneakyThrow(Throwable throwable) throws E {
+        throw (E) throwable;
+    }
+
+    private static final class ListenerMethod {
+
+        final Class<?> eventClass;
+        final Subscribe annotation;
+
+        /**
+         * Creates a consumer bound to a listener, null if the method is invoked through the handle instead.
+         */
+        private final MethodHandle factory;
+
+        /**
+         * The method, taking the listener and the event as objects.
+         */
+        private final MethodHandle handle;
+
+        ListenerMethod(Method method, Subscribe annotation) {
+            this.eventClass = method.getParameterTypes()[0];
+            this.annotation = annotation;
+            MethodHandle factory = null;
+            MethodHandle handle;
+            try {
+                if (!isPublic(method)) {
+                    method.setAccessible(true);
+                }
+                handle = LOOKUP.unreflect(method);
+                if (isPublic(method)) {
+                    try {
+                        CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                                MethodType.methodType(Consumer.class, method.getDeclaringClass()), INVOKED_TYPE,
+                                handle, MethodType.methodType(void.class, eventClass));
+                        factory = site.getTarget();
+                    } catch (Throwable ignored) {
+                        // the class is not visible to the metafactory, use the handle
+                    }
+                }
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException(method + " cannot be accessed", e);
+            }
+            this.factory = factory;
+            this.handle = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        @SuppressWarnings("unchecked")
+        Consumer<Object> bind(Object listener) {
+            if (factory != null) {
+                try {
+                    return (Consumer<Object>) factory.invoke(listener);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            }
+            MethodHandle handle = this.handle;
+            return event -> {
+                try {
+                    handle.invokeExact(listener, event);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        }
+    }
+}
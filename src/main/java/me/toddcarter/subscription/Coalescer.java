@@ -0,0 +1,147 @@
+package me.toddcarter.subscription;
+
+import me.toddcarter.event.PoolableEvent;
+import me.toddcarter.timer.HashedWheelTimer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Keeps only the latest event per key of a subscription and delivers it on the executor of its bus once the window has passed.
+ * <p>
+ * When coalescing, the window starts with the first event of a key. When debouncing, it restarts with every event,
+ * so the latest event is only delivered once no event has been received for the whole window.
+ * Windows are rounded up to the tick of the shared timer.
+ * <p>
+ * A pending {@link PoolableEvent} is retained while it is held by a window, and released once it has been delivered or replaced.
+ */
+final class Coalescer<T> {
+
+    private static final Object NO_KEY = new Object();
+    private static final Object DELIVERED = new Object();
+
+    private final Subscription<T> subscription;
+    private final Function<? super T, ?> keyFunction;
+    private final long windowNanos;
+    private final boolean debounce;
+    private final Executor executor;
+    private final ConcurrentHashMap<Object, Window> windows = new ConcurrentHashMap<>();
+
+    Coalescer(Subscription<T> subscription, Function<? super T, ?> keyFunction, long windowNanos, boolean debounce, Executor executor) {
+        this.subscription = subscription;
+        this.keyFunction = keyFunction;
+        this.windowNanos = windowNanos;
+        this.debounce = debounce;
+        this.executor = executor;
+    }
+
+    /**
+     * Replace the pending event of the key of an event, opening a window if there is none.
+     *
+     * @param event the event
+     */
+    void offer(T event) {
+        Object key = keyFunction == null ? NO_KEY : keyFunction.apply(event);
+        if (event instanceof PoolableEvent) {
+            ((PoolableEvent) event).retain();
+        }
+        while (true) {
+            Window window = windows.get(key);
+            if (window == null) {
+                window = new Window(key, event);
+                if (windows.putIfAbsent(key, window) == null) {
+                    window.schedule(windowNanos);
+                    return;
+                }
+            } else if (window.replace(event)) {
+                return;
+            } else {
+                // the window was delivered while replacing its event
+                windows.remove(key, window);
+            }
+        }
+    }
+
+    /**
+     * Close every open window without delivering its event.
+     */
+    void cancel() {
+        for (Window window : windows.values()) {
+            windows.remove(window.key, window);
+            Object latest = window.latest.getAndSet(DELIVERED);
+            if (latest != DELIVERED) {
+                release(latest);
+            }
+        }
+    }
+
+    private final class Window {
+
+        private final Object key;
+        private final AtomicReference<Object> latest;
+        private volatile long lastOffer = System.nanoTime();
+
+        Window(Object key, T event) {
+            this.key = key;
+            this.latest = new AtomicReference<>(event);
+        }
+
+        boolean replace(T event) {
+            Object current;
+            do {
+                current = latest.get();
+                if (current == DELIVERED) {
+                    return false;
+                }
+            } while (!latest.compareAndSet(current, event));
+            release(current);
+            if (debounce) {
+                lastOffer = System.nanoTime();
+            }
+            return true;
+        }
+
+        void schedule(long nanos) {
+            HashedWheelTimer.shared().newTimeout(timeout -> close(), nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void close() {
+            if (debounce) {
+                long remaining = lastOffer + windowNanos - System.nanoTime();
+                if (remaining > 0) {
+                    schedule(remaining);
+                    return;
+                }
+            }
+            windows.remove(key, this);
+            Object latest = this.latest.getAndSet(DELIVERED);
+            if (latest == DELIVERED) {
+                // cancelled when the subscription was unregistered
+                return;
+            }
+            T event = (T) latest;
+            try {
+                executor.execute(() -> {
+                    try {
+                        subscription.deliver(event);
+                    } finally {
+                        release(event);
+                    }
+                });
+            } catch (RuntimeException e) {
+                release(event);
+                throw e;
+            }
+        }
+    }
+
+    private static void release(Object event) {
+        if (event instanceof PoolableEvent) {
+            ((PoolableEvent) event).release();
+        }
+    }
+}
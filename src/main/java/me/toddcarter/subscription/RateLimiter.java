@@ -0,0 +1,48 @@
+package me.toddcarter.subscription;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket, implemented as a generic cell rate algorithm.
+ * <p>
+ * Instead of counting tokens, the limiter keeps the theoretical arrival time of the next permit,
+ * which is moved forward by the emission interval for every permit acquired.
+ * A permit is refused once that time would be more than the period ahead of now, so at most the full amount of permits can burst at once.
+ */
+final class RateLimiter {
+
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * Create a limiter allowing a number of permits per period.
+     *
+     * @param permits     the amount of permits per period
+     * @param periodNanos the period in nanoseconds
+     */
+    RateLimiter(long permits, long periodNanos) {
+        this.interval = Math.max(1, periodNanos / permits);
+        this.tolerance = periodNanos;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Acquire a permit if one is available.
+     *
+     * @return false if the rate has been exceeded
+     */
+    boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - now < 0 ? now : arrival) + interval;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package me.toddcarter.subscription;
+
+import me.toddcarter.event.EventPriority;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a listener object as a listener.
+ * <p>
+ * The method must take a single event parameter and is registered when its object is passed to {@link me.toddcarter.eventbus.EventBus#register(Object)}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+
+    /**
+     * The priority of the listener.
+     *
+     * @return the priority
+     */
+    EventPriority priority() default EventPriority.NORMAL;
+
+    /**
+     * Do not execute if the event was cancelled by another listener.
+     *
+     * @return true to ignore cancelled events
+     */
+    boolean ignoreCancelled() default false;
+}
@@ -1,97 +1,572 @@
 package me.toddcarter.subscription;
 
-import me.toddcarter.Events;
-import me.toddcarter.event.Event;
 import me.toddcarter.event.EventPriority;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.metrics.SubscriptionMetrics;
+import me.toddcarter.timer.HashedWheelTimer;
+import me.toddcarter.timer.Timeout;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
-public class Subscription<T extends Event> {
+public class Subscription<T> {
+
+    private static final int REJECTED = 0;
+    private static final int ACCEPTED = 1;
+    private static final int LAST_CALL = 2;
+    private static final int EXPIRED = 3;
+
+    private static final Predicate<?>[] NO_PREDICATES = new Predicate<?>[0];
+
+    /**
+     * Created by the subscription itself, so the handles of compiled subscriptions can find its private methods.
+     */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 
     private final Class<T> eventClass;
     private final EventPriority priority;
 
-    private final List<Predicate<? super T>> filters;
-    private final List<Predicate<Subscription<T>>> expiries;
+    private final Predicate<? super T>[] filters;
+    private final Predicate<Subscription<T>>[] expiries;
     private final Consumer<? super T> handler;
+    private final Consumer<? super List<T>> batchHandler;
     private final BiConsumer<? super T, Throwable> exceptionHandler;
+    private final boolean serialized;
+    private final boolean hierarchical;
+    private final Function<? super T, ?> keyExtractor;
+    private final Object key;
+    private final Coalescer<T> coalescer;
+    private final RateLimiter rateLimiter;
+    private final double sampleRatio;
+    private final Object owner;
 
-    private final AtomicLong initTime = new AtomicLong(0);
-    private AtomicLong callCount = new AtomicLong(0);
-    private AtomicBoolean active = new AtomicBoolean(true);
+    private final long initTime;
+    private final LongAdder callCount = new LongAdder();
+    private final LongAdder throttleCount = new LongAdder();
+    private final AtomicLong remainingCalls;
+    private final AtomicBoolean active = new AtomicBoolean(true);
+    private volatile Timeout expiryTimeout;
+    private volatile SubscriptionMetrics metrics;
+    private volatile HandlerList handlerList;
 
     public Subscription(Class<T> eventClass, EventPriority priority, List<Predicate<? super T>> filters, List<Predicate<Subscription<T>>> expiries, Consumer<? super T> handler, BiConsumer<? super T, Throwable> exceptionHandler) {
-        this.eventClass = eventClass;
-        this.priority = priority;
+        this(new SubscriptionBuilder<>(eventClass, priority).with(filters, expiries, handler, exceptionHandler));
+    }
+
+    Subscription(SubscriptionBuilder<T> builder) {
+        this.eventClass = builder.eventClass;
+        this.priority = builder.priority;
+        @SuppressWarnings("unchecked")
+        Predicate<? super T>[] filters = builder.filters.toArray((Predicate<? super T>[]) NO_PREDICATES);
+        @SuppressWarnings("unchecked")
+        Predicate<Subscription<T>>[] expiries = builder.expiries.toArray((Predicate<Subscription<T>>[]) NO_PREDICATES);
         this.filters = filters;
         this.expiries = expiries;
-        this.handler = handler;
-        this.exceptionHandler = exceptionHandler;
-        this.initTime.set(System.currentTimeMillis());
-        this.callCount.set(0);
-        this.active.set(true);
+        this.handler = builder.handler;
+        this.batchHandler = builder.batchHandler;
+        this.exceptionHandler = builder.exceptionHandler;
+        this.serialized = builder.serialized;
+        this.hierarchical = builder.hierarchical;
+        this.keyExtractor = builder.keyExtractor;
+        this.key = builder.key;
+        this.rateLimiter = builder.ratePermits == 0 ? null : new RateLimiter(builder.ratePermits, builder.ratePeriodNanos);
+        this.sampleRatio = builder.sampleRatio;
+        this.owner = builder.owner;
+        this.coalescer = builder.coalesceNanos == 0 ? null : new Coalescer<>(this, builder.coalesceKey, builder.coalesceNanos, builder.debounce, builder.getExecutor());
+        this.remainingCalls = builder.maxCalls == Long.MAX_VALUE ? null : new AtomicLong(builder.maxCalls);
+        this.initTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Execute the subscription for an event.
+     * <p>
+     * Subscriptions are executed concurrently unless they were built as {@link SubscriptionBuilder#serialized()}.
+     *
+     * @param event the event to handle
+     */
+    public final void execute(Object event) {
+        if (!this.active.get()) {
+            return;
+        }
+        if (this.serialized) {
+            synchronized (this) {
+                dispatch(event);
+            }
+        } else {
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Compile the subscription into a method handle executing it for an event, for compiled dispatch.
+     * <p>
+     * Subscriptions without expiries, call limits, throttling, coalescing, serialization or a batch handler are compiled into their filters
+     * guarding their handler, with every predicate and the handler bound as constants so a customized handle can inline them.
+     * The handle falls back to {@link #execute(Object)} while metrics are recorded or once the subscription is inactive.
+     * Any other subscription is compiled into a call of {@link #execute(Object)}.
+     *
+     * @return a handle of type {@code (Object)void}
+     */
+    @NotNull
+    public final MethodHandle compile() {
+        MethodHandle execute = Handles.EXECUTE.bindTo(this);
+        if (this.expiries.length > 0 || this.remainingCalls != null || this.serialized || this.batchHandler != null
+                || this.coalescer != null || this.rateLimiter != null || this.sampleRatio < 1.0) {
+            return execute;
+        }
+        MethodHandle call = MethodHandles.foldArguments(Handles.ACCEPT.bindTo(this.handler), Handles.CALLED.bindTo(this));
+        for (int i = this.filters.length - 1; i >= 0; i--) {
+            call = MethodHandles.guardWithTest(Handles.TEST.bindTo(this.filters[i]), call, Handles.REJECTED);
+        }
+        call = MethodHandles.catchException(call, Throwable.class, Handles.FAILED.bindTo(this));
+        return MethodHandles.guardWithTest(Handles.DIRECT.bindTo(this), call, execute);
     }
 
+    /**
+     * Whether a compiled handle can skip the generic dispatch.
+     */
+    private boolean isDirect() {
+        return this.metrics == null && this.active.get();
+    }
+
+    private void called(Object event) {
+        this.callCount.increment();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void failed(Throwable t, Object event) {
+        this.exceptionHandler.accept((T) event, t);
+    }
 
-    public synchronized final void execute(Event event) {
+    private static void rejected(Object event) {
+    }
+
+    /**
+     * Execute the subscription for a batch of events of the same class.
+     * <p>
+     * A subscription built with {@link SubscriptionBuilder#batchHandler(Consumer)} receives every accepted event in a single call,
+     * any other subscription is executed for each event in order.
+     *
+     * @param events the events to handle
+     */
+    public final void executeBatch(List<?> events) {
+        if (this.batchHandler == null || this.coalescer != null) {
+            for (Object event : events) {
+                execute(event);
+            }
+            return;
+        }
         if (!this.active.get()) {
-            Events.unregisterListener(this);
             return;
         }
+        if (this.serialized) {
+            synchronized (this) {
+                dispatchBatch(events);
+            }
+        } else {
+            dispatchBatch(events);
+        }
+    }
 
+    private void dispatch(Object event) {
         T castedEvent = this.eventClass.cast(event);
-
-        //check the expiries
-        for(Predicate<Subscription<T>> expiries : this.expiries) {
-            if(expiries.test(this)) {
-                Events.unregisterListener(this);
-                this.active.set(false);
+        SubscriptionMetrics metrics = this.metrics;
+        try {
+            if (admit(castedEvent, metrics) != ACCEPTED) {
                 return;
             }
+            if (this.coalescer != null) {
+                //the coalescer delivers the latest event once the window has passed
+                this.coalescer.offer(castedEvent);
+                return;
+            }
+        } catch (Throwable t) {
+            if (metrics != null) {
+                metrics.failed();
+            }
+            this.exceptionHandler.accept(castedEvent, t);
+            return;
         }
+        invoke(castedEvent, metrics);
+    }
 
-        try {
-            //check the filters
-            for(Predicate<? super T> filters : this.filters) {
-                if(!filters.test(castedEvent)) {
-                    return;
-                }
+    /**
+     * Deliver an event held back by the coalescer.
+     *
+     * @param event the latest event of its window
+     */
+    void deliver(T event) {
+        if (!this.active.get() || this.handlerList == null) {
+            return;
+        }
+        if (this.serialized) {
+            synchronized (this) {
+                invoke(event, this.metrics);
             }
+        } else {
+            invoke(event, this.metrics);
+        }
+    }
 
-            //call the handler
-            this.handler.accept(castedEvent);
+    private void invoke(T castedEvent, SubscriptionMetrics metrics) {
+        try {
+            int state = claim();
+            if (state == EXPIRED) {
+                return;
+            }
 
             //increment the call count
-           this.callCount.incrementAndGet();
+            this.callCount.increment();
 
+            long start = metrics != null ? System.nanoTime() : 0L;
+            try {
+                //call the handler
+                if (this.batchHandler != null) {
+                    this.batchHandler.accept(Collections.singletonList(castedEvent));
+                } else {
+                    this.handler.accept(castedEvent);
+                }
+            } finally {
+                if (metrics != null) {
+                    metrics.invoked(System.nanoTime() - start);
+                }
+                if (state == LAST_CALL) {
+                    expire();
+                }
+            }
         } catch (Throwable t) {
+            if (metrics != null) {
+                metrics.failed();
+            }
             this.exceptionHandler.accept(castedEvent, t);
         }
     }
 
+    private void dispatchBatch(List<?> events) {
+        SubscriptionMetrics metrics = this.metrics;
+        List<T> accepted = new ArrayList<>(events.size());
+        boolean lastCall = false;
+        for (Object event : events) {
+            T castedEvent = this.eventClass.cast(event);
+            int state;
+            try {
+                state = accept(castedEvent, metrics);
+            } catch (Throwable t) {
+                if (metrics != null) {
+                    metrics.failed();
+                }
+                this.exceptionHandler.accept(castedEvent, t);
+                continue;
+            }
+            if (state == EXPIRED) {
+                break;
+            }
+            if (state != REJECTED) {
+                accepted.add(castedEvent);
+            }
+            if (state == LAST_CALL) {
+                lastCall = true;
+                break;
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        //increment the call count
+        this.callCount.add(accepted.size());
+
+        long start = metrics != null ? System.nanoTime() : 0L;
+        try {
+            //call the handler
+            this.batchHandler.accept(accepted);
+        } catch (Throwable t) {
+            if (metrics != null) {
+                metrics.failed();
+            }
+            this.exceptionHandler.accept(accepted.get(0), t);
+        } finally {
+            if (metrics != null) {
+                metrics.invoked(System.nanoTime() - start);
+            }
+            if (lastCall) {
+                expire();
+            }
+        }
+    }
+
+    /**
+     * Check the expiries, filters and call limit for an event.
+     *
+     * @return whether the event was rejected, accepted, accepted as the last call, or the subscription expired
+     */
+    private int accept(T event, SubscriptionMetrics metrics) {
+        int state = admit(event, metrics);
+        return state == ACCEPTED ? claim() : state;
+    }
+
+    /**
+     * Check the sampling, rate limit, expiries and filters for an event.
+     *
+     * @return whether the event was rejected, accepted, or the subscription expired
+     */
+    private int admit(T event, SubscriptionMetrics metrics) {
+        //drop sampled out and rate limited events before anything else
+        if ((this.sampleRatio < 1.0 && ThreadLocalRandom.current().nextDouble() >= this.sampleRatio)
+                || (this.rateLimiter != null && !this.rateLimiter.tryAcquire())) {
+            this.throttleCount.increment();
+            if (metrics != null) {
+                metrics.throttled();
+            }
+            return REJECTED;
+        }
+
+        //check the expiries
+        for (Predicate<Subscription<T>> expiry : this.expiries) {
+            if (expiry.test(this)) {
+                expire();
+                return EXPIRED;
+            }
+        }
+
+        //check the filters
+        for (Predicate<? super T> filter : this.filters) {
+            if (!filter.test(event)) {
+                if (metrics != null) {
+                    metrics.filterRejected();
+                }
+                return REJECTED;
+            }
+        }
+        return ACCEPTED;
+    }
+
+    /**
+     * Claim a call if the amount of calls is limited.
+     *
+     * @return whether the call was accepted, accepted as the last call, or the subscription expired
+     */
+    private int claim() {
+        if (this.remainingCalls != null) {
+            long remaining;
+            do {
+                remaining = this.remainingCalls.get();
+                if (remaining <= 0) {
+                    expire();
+                    return EXPIRED;
+                }
+            } while (!this.remainingCalls.compareAndSet(remaining, remaining - 1));
+            return remaining == 1 ? LAST_CALL : ACCEPTED;
+        }
+        return ACCEPTED;
+    }
+
+    /**
+     * Expire the subscription, it will not be executed again.
+     * <p>
+     * The subscription is tombstoned rather than unregistered straight away,
+     * so expiring during dispatch does not rebuild the handlers for every expired subscription.
+     */
+    public final void expire() {
+        if (this.active.compareAndSet(true, false)) {
+            Timeout timeout = this.expiryTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            HandlerList handlerList = this.handlerList;
+            if (handlerList != null) {
+                handlerList.tombstone(this);
+            }
+        }
+    }
+
+    /**
+     * Expire the subscription on the shared timer once the time has passed.
+     *
+     * @param nanos the time to expire after in nanoseconds
+     */
+    void expireAfter(long nanos) {
+        this.expiryTimeout = HashedWheelTimer.shared().newTimeout(timeout -> expire(), nanos, TimeUnit.NANOSECONDS);
+        if (!this.active.get()) {
+            this.expiryTimeout.cancel();
+        }
+    }
+
+    /**
+     * Bind the subscription to the handler list it has been registered to.
+     * <p>
+     * This is called by {@link HandlerList}, a subscription is bound to at most one handler list at a time.
+     *
+     * @param handlerList the handler list, or null once unregistered
+     */
+    public final void bind(HandlerList handlerList) {
+        this.handlerList = handlerList;
+        if (handlerList == null && this.coalescer != null) {
+            this.coalescer.cancel();
+        }
+    }
+
+    /**
+     * Get the handler list the subscription is registered to.
+     *
+     * @return the handler list, or null if not registered
+     */
+    public final HandlerList getHandlerList() {
+        return this.handlerList;
+    }
+
     @NotNull
-    public final Class<? extends Event> getEventClass() {
+    public final Class<T> getEventClass() {
         return this.eventClass;
     }
 
+    /**
+     * Whether the subscription also receives events that are subtypes of its event class.
+     *
+     * @return true if subtypes are included
+     */
+    public final boolean isHierarchical() {
+        return this.hierarchical;
+    }
+
+    /**
+     * Whether the subscription only receives events with a matching key.
+     *
+     * @return true if a key was set with {@link SubscriptionBuilder#key(Function, Object)}
+     */
+    public final boolean isKeyed() {
+        return this.keyExtractor != null;
+    }
+
+    /**
+     * Get the function extracting the key from events.
+     *
+     * @return the key extractor, or null if not keyed
+     */
+    public final Function<? super T, ?> getKeyExtractor() {
+        return this.keyExtractor;
+    }
+
+    /**
+     * Get the key events must have to be received.
+     *
+     * @return the key, or null if not keyed
+     */
+    public final Object getKey() {
+        return this.key;
+    }
+
+    /**
+     * Get the owner the subscription was registered for.
+     *
+     * @return the owner, or null if it has none
+     */
+    public final Object getOwner() {
+        return this.owner;
+    }
+
     public final boolean isActive() {
         return this.active.get();
     }
 
+    /**
+     * Whether the subscription handles events in batches.
+     *
+     * @return true if built with a batch handler
+     */
+    public final boolean isBatched() {
+        return this.batchHandler != null;
+    }
+
+    public final boolean isSerialized() {
+        return this.serialized;
+    }
+
     public final EventPriority getPriority() { return this.priority; }
 
     public final long getCallCounter() {
-        return this.callCount.get();
+        return this.callCount.sum();
+    }
+
+    /**
+     * Get the amount of events dropped by the rate limit or sampling.
+     *
+     * @return the amount of throttled events
+     */
+    public final long getThrottleCounter() {
+        return this.throttleCount.sum();
     }
 
     public final long getRegisterTime() {
-        return this.initTime.get();
+        return this.initTime;
+    }
+
+    /**
+     * Get the metrics of this subscription.
+     *
+     * @return the metrics, or null if metrics are not enabled
+     */
+    public final SubscriptionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Start or stop recording metrics for this subscription.
+     *
+     * @param enabled true to record metrics
+     */
+    public final void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            this.metrics = null;
+        } else if (this.metrics == null) {
+            synchronized (this) {
+                if (this.metrics == null) {
+                    this.metrics = new SubscriptionMetrics();
+                }
+            }
+        }
     }
 
+    /**
+     * The handles compiled subscriptions are composed of, only resolved once a subscription is compiled.
+     */
+    private static final class Handles {
+
+        static final MethodHandle EXECUTE;
+        static final MethodHandle DIRECT;
+        static final MethodHandle CALLED;
+        static final MethodHandle FAILED;
+        static final MethodHandle REJECTED;
+        static final MethodHandle ACCEPT;
+        static final MethodHandle TEST;
+
+        static {
+            MethodType consumer = MethodType.methodType(void.class, Object.class);
+            try {
+                EXECUTE = LOOKUP.findVirtual(Subscription.class, "execute", consumer);
+                DIRECT = LOOKUP.findVirtual(Subscription.class, "isDirect", MethodType.methodType(boolean.class));
+                CALLED = LOOKUP.findVirtual(Subscription.class, "called", consumer);
+                FAILED = LOOKUP.findVirtual(Subscription.class, "failed", MethodType.methodType(void.class, Throwable.class, Object.class));
+                REJECTED = LOOKUP.findStatic(Subscription.class, "rejected", consumer);
+                ACCEPT = LOOKUP.findVirtual(Consumer.class, "accept", consumer);
+                TEST = LOOKUP.findVirtual(Predicate.class, "test", MethodType.methodType(boolean.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
 }
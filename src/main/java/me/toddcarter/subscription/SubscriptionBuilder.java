@@ -2,26 +2,43 @@ package me.toddcarter.subscription;
 
 import me.toddcarter.Events;
 import me.toddcarter.event.Cancellable;
-import me.toddcarter.event.Event;
 import me.toddcarter.event.EventPriority;
+import me.toddcarter.eventbus.EventBus;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
-public class SubscriptionBuilder<T extends Event> {
+public class SubscriptionBuilder<T> {
 
-    private final Class<T> eventClass;
-    private EventPriority priority;
+    private final EventBus bus;
+    final Class<T> eventClass;
+    EventPriority priority;
 
-    private List<Predicate<? super T>> filters;
-    private List<Predicate<Subscription<T>>> expiries;
-    private Consumer<? super T> handler;
-    private BiConsumer<? super T, Throwable> exceptionHandler;
+    List<Predicate<? super T>> filters;
+    List<Predicate<Subscription<T>>> expiries;
+    Consumer<? super T> handler;
+    Consumer<? super List<T>> batchHandler;
+    BiConsumer<? super T, Throwable> exceptionHandler;
+    long maxCalls = Long.MAX_VALUE;
+    long expireAfterNanos = Long.MAX_VALUE;
+    boolean serialized;
+    boolean hierarchical;
+    Function<? super T, ?> keyExtractor;
+    Object key;
+    Function<? super T, ?> coalesceKey;
+    long coalesceNanos;
+    boolean debounce;
+    long ratePermits;
+    long ratePeriodNanos;
+    double sampleRatio = 1.0;
+    Object owner;
 
     /**
      * Constructor for the SubscriptionBuilder.
@@ -31,8 +48,22 @@ public class SubscriptionBuilder<T extends Event> {
      *
      */
     public SubscriptionBuilder(Class<T> eventClass , EventPriority priority) {
+        this(Events.getEventBus(), eventClass, priority);
+    }
+
+    /**
+     * Constructor for the SubscriptionBuilder.
+     *
+     * @param bus        the bus to register the subscription to
+     * @param eventClass the event class to subscribe to
+     * @param priority   the priority of the subscription
+     *
+     */
+    public SubscriptionBuilder(EventBus bus, Class<T> eventClass , EventPriority priority) {
+        Objects.requireNonNull(bus, "bus");
         Objects.requireNonNull(eventClass, "eventClass");
         Objects.requireNonNull(priority, "priority");
+        this.bus = bus;
         this.eventClass = eventClass;
         this.priority = priority;
         this.filters = new ArrayList<>();
@@ -65,6 +96,26 @@ public class SubscriptionBuilder<T extends Event> {
         return this;
     }
 
+    /**
+     * Only receive events whose key matches.
+     * <p>
+     * Keyed subscriptions are routed through a hash index, so dispatch only executes the subscriptions matching the key of the event.
+     * Subscriptions share an index when they use the same extractor instance, such as the same method reference or a constant.
+     *
+     * @param extractor the function extracting the key from an event
+     * @param key       the key to match, compared with equals
+     */
+    public <K> SubscriptionBuilder<T> key(Function<? super T, ? extends K> extractor, K key) {
+        Objects.requireNonNull(extractor, "extractor");
+        if (this.keyExtractor != null) {
+            throw new IllegalStateException("A key has already been set");
+        }
+        this.keyExtractor = extractor;
+        this.key = key;
+        filters.add(0, event -> Objects.equals(extractor.apply(event), key));
+        return this;
+    }
+
     /**
      * Adds an expiry condition to the subscription.
      *
@@ -83,27 +134,162 @@ public class SubscriptionBuilder<T extends Event> {
      */
     public SubscriptionBuilder<T> expireAfter(Integer maxCalls) {
         Objects.requireNonNull(maxCalls, "maxCalls");
+        return expireAfter(maxCalls.longValue());
+    }
+
+    /**
+     * Limit the amount of times the listener can be called
+     *
+     * @param maxCalls the max amount of times the listener can be called
+     */
+    public SubscriptionBuilder<T> expireAfter(long maxCalls) {
         if(maxCalls < 1) {
             throw new IllegalArgumentException("maxCalls < 1");
         }
-        return expireIf(subscription -> subscription.getCallCounter() >= maxCalls);
+        this.maxCalls = Math.min(this.maxCalls, maxCalls);
+        return this;
     }
 
     /**
      * Limit how long the listener can be executed
+     * <p>
+     * The listener is expired by the shared timer once the time has passed, it is not checked on every event.
      *
      * @param time the time
      * @param timeUnit the time unit
      */
     public SubscriptionBuilder<T> expireAfter(Integer time, TimeUnit timeUnit) {
         Objects.requireNonNull(time, "time");
-        Objects.requireNonNull(timeUnit, "timeUnit");
+        return expireAfter(time.longValue(), timeUnit);
+    }
+
+    /**
+     * Limit how long the listener can be executed
+     * <p>
+     * The listener is expired by the shared timer once the time has passed, it is not checked on every event.
+     *
+     * @param time the time
+     * @param timeUnit the time unit
+     */
+    public SubscriptionBuilder<T> expireAfter(long time, TimeUnit timeUnit) {
         Objects.requireNonNull(timeUnit, "timeUnit");
         if(time < 1) {
             throw new IllegalArgumentException("time < 1");
         }
-        long expiry = timeUnit.toMillis(time) + System.currentTimeMillis();
-        return expireIf(subscription -> expiry < subscription.getRegisterTime());
+        this.expireAfterNanos = Math.min(this.expireAfterNanos, timeUnit.toNanos(time));
+        return this;
+    }
+
+    /**
+     * Also receive events that are subclasses of, or implement, the subscribed type.
+     */
+    public SubscriptionBuilder<T> includeSubtypes() {
+        this.hierarchical = true;
+        return this;
+    }
+
+    /**
+     * Limit how often the listener can be executed.
+     * <p>
+     * Up to the amount of permits can be used at once, after which permits become available again at an even rate.
+     * Events over the limit are dropped before the filters are checked, so they are cheap but also use up a permit when a filter would have rejected them.
+     *
+     * @param permits  the amount of executions per period
+     * @param period   the period
+     * @param timeUnit the time unit
+     */
+    public SubscriptionBuilder<T> rateLimit(long permits, long period, TimeUnit timeUnit) {
+        Objects.requireNonNull(timeUnit, "timeUnit");
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits < 1");
+        }
+        if (period < 1) {
+            throw new IllegalArgumentException("period < 1");
+        }
+        this.ratePermits = permits;
+        this.ratePeriodNanos = timeUnit.toNanos(period);
+        return this;
+    }
+
+    /**
+     * Only execute the listener for a random sample of events.
+     * <p>
+     * Events are sampled before the filters are checked.
+     *
+     * @param ratio the ratio of events to keep, between 0 and 1
+     */
+    public SubscriptionBuilder<T> sample(double ratio) {
+        if (!(ratio > 0.0 && ratio <= 1.0)) {
+            throw new IllegalArgumentException("ratio must be greater than 0 and at most 1");
+        }
+        this.sampleRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Only handle the latest event per key within a window.
+     * <p>
+     * The window of a key opens with its first event, and once it has passed the latest event of the key is handled on the executor of the bus.
+     * Events are filtered before they are coalesced, and call limits only count the events that are handled.
+     *
+     * @param keyFunction the function extracting the key from an event
+     * @param window      the window
+     * @param timeUnit    the time unit
+     */
+    public SubscriptionBuilder<T> coalesce(Function<? super T, ?> keyFunction, long window, TimeUnit timeUnit) {
+        Objects.requireNonNull(keyFunction, "keyFunction");
+        return window(keyFunction, window, timeUnit, false);
+    }
+
+    /**
+     * Only handle the latest event once no event has been received for a window.
+     * <p>
+     * The latest event is handled on the executor of the bus.
+     * Events are filtered before they are debounced, and call limits only count the events that are handled.
+     *
+     * @param window   the window
+     * @param timeUnit the time unit
+     */
+    public SubscriptionBuilder<T> debounce(long window, TimeUnit timeUnit) {
+        return window(null, window, timeUnit, true);
+    }
+
+    private SubscriptionBuilder<T> window(Function<? super T, ?> keyFunction, long window, TimeUnit timeUnit, boolean debounce) {
+        Objects.requireNonNull(timeUnit, "timeUnit");
+        if (window < 1) {
+            throw new IllegalArgumentException("window < 1");
+        }
+        if (this.coalesceNanos != 0) {
+            throw new IllegalStateException("A coalescing window has already been set");
+        }
+        this.coalesceKey = keyFunction;
+        this.coalesceNanos = timeUnit.toNanos(window);
+        this.debounce = debounce;
+        return this;
+    }
+
+    /**
+     * Register the listener for an owner, such as a plugin or a session.
+     * <p>
+     * Every listener of an owner can be unregistered at once with {@link EventBus#unregisterOwner(Object)}.
+     * Owners are compared by identity.
+     *
+     * @param owner the owner of the listener
+     */
+    public SubscriptionBuilder<T> owner(Object owner) {
+        Objects.requireNonNull(owner, "owner");
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * Never execute the listener concurrently.
+     * <p>
+     * By default a listener may be executed by several threads at once when the event is called asynchronously.
+     */
+    public SubscriptionBuilder<T> serialized() {
+        this.serialized = true;
+        return this;
     }
 
     /**
@@ -125,8 +311,63 @@ public class SubscriptionBuilder<T extends Event> {
     public Subscription<T> handler(Consumer<? super T> handler) {
         Objects.requireNonNull(handler, "handler");
         this.handler = handler;
-        Subscription<T> subscription = new Subscription<>(eventClass, priority, filters, expiries, handler, exceptionHandler);
-        Events.registerListener(subscription);
+        return register();
+    }
+
+    /**
+     * Adds a handler receiving events in batches.
+     * <p>
+     * Events called with callSyncBatch or callAsyncBatch are passed in a single list once they pass the filters,
+     * any other event is passed in a list of its own. If the handler throws, the error handler is called with the first event of the batch.
+     *
+     * @param batchHandler the handler to add
+     */
+    public Subscription<T> batchHandler(Consumer<? super List<T>> batchHandler) {
+        Objects.requireNonNull(batchHandler, "batchHandler");
+        this.batchHandler = batchHandler;
+        return register();
+    }
+
+    /**
+     * Build the listener without registering it.
+     * <p>
+     * Built listeners can be registered together with {@link EventBus#registerAll(java.util.Collection)}.
+     * A time limit set with expireAfter starts when the listener is built.
+     *
+     * @param handler the handler to add
+     */
+    public Subscription<T> build(Consumer<? super T> handler) {
+        Objects.requireNonNull(handler, "handler");
+        this.handler = handler;
+        return create();
+    }
+
+    private Subscription<T> register() {
+        Subscription<T> subscription = new Subscription<>(this);
+        bus.registerListener(subscription);
+        if (expireAfterNanos != Long.MAX_VALUE) {
+            subscription.expireAfter(expireAfterNanos);
+        }
         return subscription;
     }
+
+    private Subscription<T> create() {
+        Subscription<T> subscription = new Subscription<>(this);
+        if (expireAfterNanos != Long.MAX_VALUE) {
+            subscription.expireAfter(expireAfterNanos);
+        }
+        return subscription;
+    }
+
+    Executor getExecutor() {
+        return bus.getExecutor();
+    }
+
+    SubscriptionBuilder<T> with(List<Predicate<? super T>> filters, List<Predicate<Subscription<T>>> expiries, Consumer<? super T> handler, BiConsumer<? super T, Throwable> exceptionHandler) {
+        this.filters = filters;
+        this.expiries = expiries;
+        this.handler = handler;
+        this.exceptionHandler = exceptionHandler;
+        return this;
+    }
 }
@@ -0,0 +1,263 @@
+package me.toddcarter.timer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel.
+ * <p>
+ * Scheduling and cancelling a timeout are O(1), timeouts are only approximately
+ * on time as they expire on the first tick after their deadline.
+ */
+public final class HashedWheelTimer {
+
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_SHUTDOWN = 2;
+
+    private static volatile HashedWheelTimer shared;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread workerThread;
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+
+    // only accessed by the worker thread
+    private long tick;
+
+    /**
+     * Create a timer with a 10 millisecond tick and 512 buckets.
+     */
+    public HashedWheelTimer() {
+        this(10, TimeUnit.MILLISECONDS, 512, daemonThreadFactory("event-system-timer"));
+    }
+
+    /**
+     * Create a timer.
+     *
+     * @param tickDuration  the duration of a tick
+     * @param unit          the unit of the tick duration
+     * @param ticksPerWheel the amount of buckets, rounded up to a power of two
+     * @param threadFactory the factory for the worker thread
+     */
+    public HashedWheelTimer(long tickDuration, @NotNull TimeUnit unit, int ticksPerWheel, @NotNull ThreadFactory threadFactory) {
+        Objects.requireNonNull(unit, "unit");
+        Objects.requireNonNull(threadFactory, "threadFactory");
+        if (tickDuration < 1) {
+            throw new IllegalArgumentException("tickDuration < 1");
+        }
+        if (ticksPerWheel < 1 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        this.wheel = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.workerThread = threadFactory.newThread(this::work);
+    }
+
+    /**
+     * Get the timer shared by the event system, it is started on first use and never stopped.
+     *
+     * @return the shared timer
+     */
+    @NotNull
+    public static HashedWheelTimer shared() {
+        HashedWheelTimer timer = shared;
+        if (timer == null) {
+            synchronized (HashedWheelTimer.class) {
+                if ((timer = shared) == null) {
+                    shared = timer = new HashedWheelTimer();
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Schedule a task to run once after a delay.
+     *
+     * @param task  the task to run on the timer thread
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the handle to cancel the task with
+     */
+    @NotNull
+    public Timeout newTimeout(@NotNull TimerTask task, long delay, @NotNull TimeUnit unit) {
+        Objects.requireNonNull(task, "task");
+        Objects.requireNonNull(unit, "unit");
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the timer, pending timeouts will never expire.
+     */
+    public void stop() {
+        if (workerState.getAndSet(WORKER_SHUTDOWN) == WORKER_STARTED) {
+            workerThread.interrupt();
+        }
+    }
+
+    void cancelled(Timeout timeout) {
+        cancelled.add(timeout);
+    }
+
+    private void start() {
+        int state = workerState.get();
+        if (state == WORKER_INIT) {
+            if (workerState.compareAndSet(WORKER_INIT, WORKER_STARTED)) {
+                workerThread.start();
+            }
+        } else if (state == WORKER_SHUTDOWN) {
+            throw new IllegalStateException("Cannot schedule on a stopped timer");
+        }
+    }
+
+    private void work() {
+        List<Timeout> expired = new ArrayList<>();
+        while (workerState.get() == WORKER_STARTED) {
+            if (waitForNextTick() < 0) {
+                break;
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(expired);
+            for (Timeout timeout : expired) {
+                timeout.run();
+            }
+            expired.clear();
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999999) / 1000000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (workerState.get() == WORKER_SHUTDOWN) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferPending() {
+        // bound the transfer so a flood of new timeouts cannot stall the wheel
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick); // never schedule in the past
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A doubly linked list of timeouts, only accessed by the worker thread.
+     */
+    static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(List<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.expire()) {
+                        expired.add(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.toddcarter.timer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+public final class Timeout {
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final HashedWheelTimer timer;
+    private final TimerTask task;
+    final long deadline;
+
+    private volatile int state = ST_INIT;
+
+    // only accessed by the timer thread
+    long remainingRounds;
+    Timeout next;
+    Timeout prev;
+    HashedWheelTimer.Bucket bucket;
+
+    Timeout(HashedWheelTimer timer, TimerTask task, long deadline) {
+        this.timer = timer;
+        this.task = task;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Cancel the timeout, the task will not be executed if it has not been already.
+     *
+     * @return true if the timeout was cancelled by this call
+     */
+    public boolean cancel() {
+        if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+            return false;
+        }
+        timer.cancelled(this);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+        return state == ST_EXPIRED;
+    }
+
+    @NotNull
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    @NotNull
+    public TimerTask getTask() {
+        return task;
+    }
+
+    boolean expire() {
+        return STATE.compareAndSet(this, ST_INIT, ST_EXPIRED);
+    }
+
+    void run() {
+        try {
+            task.run(this);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package me.toddcarter.timer;
+
+@FunctionalInterface
+public interface TimerTask {
+
+    /**
+     * Executed by the timer thread once the timeout has expired.
+     *
+     * @param timeout the timeout of this task
+     */
+    void run(Timeout timeout) throws Exception;
+}
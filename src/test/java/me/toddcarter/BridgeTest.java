@@ -0,0 +1,141 @@
+package me.toddcarter;
+
+import me.toddcarter.bridge.BridgeCodec;
+import me.toddcarter.bridge.BridgeReceiver;
+import me.toddcarter.bridge.BridgeSender;
+import me.toddcarter.event.Event;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.journal.EventSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+public class BridgeTest {
+
+    private static final BridgeCodec CODEC = new BridgeCodec().register(1, ValueEvent.class, new EventSerializer<ValueEvent>() {
+        @Override
+        public byte[] serialize(ValueEvent event) {
+            return ByteBuffer.allocate(8).putLong(event.value).array();
+        }
+
+        @Override
+        public ValueEvent deserialize(byte[] data) {
+            return new ValueEvent(ByteBuffer.wrap(data).getLong());
+        }
+    });
+
+    @Test
+    public void testLoopback() throws Exception {
+        EventBus local = EventBus.builder().name("local").build();
+        EventBus remote = EventBus.builder().name("remote").build();
+        AtomicLong sum = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+        remote.subscribe(ValueEvent.class).handler(event -> {
+            sum.addAndGet(event.value);
+            received.incrementAndGet();
+        });
+
+        try (BridgeReceiver receiver = BridgeReceiver.bind(remote, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CODEC);
+             BridgeSender sender = BridgeSender.builder(local, receiver.getLocalAddress(), CODEC).build()) {
+            for (long value = 1; value <= 10000; value++) {
+                local.callSync(new ValueEvent(value));
+            }
+            Assert.assertTrue(await(() -> received.get() == 10000));
+            Assert.assertEquals(10000L * 10001 / 2, sum.get());
+            Assert.assertEquals(10000, sender.getMetrics().getEvents());
+            Assert.assertEquals(10000, receiver.getMetrics().getEvents());
+            Assert.assertTrue(sender.getMetrics().getFrames() <= 10000);
+        }
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        EventBus local = EventBus.builder().name("local").build();
+        EventBus remote = EventBus.builder().name("remote").build();
+        AtomicLong received = new AtomicLong();
+        remote.subscribe(ValueEvent.class).handler(event -> received.incrementAndGet());
+
+        BridgeReceiver first = BridgeReceiver.bind(remote, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CODEC);
+        InetSocketAddress address = first.getLocalAddress();
+        try (BridgeSender sender = BridgeSender.builder(local, address, CODEC).reconnectDelay(10, TimeUnit.MILLISECONDS).build()) {
+            local.callSync(new ValueEvent(1));
+            Assert.assertTrue(await(() -> received.get() == 1));
+            first.close();
+
+            try (BridgeReceiver second = BridgeReceiver.bind(remote, address, CODEC)) {
+                // the first write after the receiver closed may still succeed, keep sending until one arrives
+                Assert.assertTrue(await(() -> {
+                    local.callSync(new ValueEvent(2));
+                    return received.get() > 1;
+                }));
+                Assert.assertEquals(1, sender.getMetrics().getReconnects());
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedFrame() throws Exception {
+        EventBus local = EventBus.builder().name("local").build();
+        EventBus remote = EventBus.builder().name("remote").build();
+        AtomicLong received = new AtomicLong();
+        remote.subscribe(ValueEvent.class).handler(event -> received.incrementAndGet());
+
+        try (BridgeReceiver receiver = BridgeReceiver.bind(remote, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CODEC);
+             SocketChannel peer = SocketChannel.open(receiver.getLocalAddress())) {
+            // a frame claiming more records than it holds
+            ByteBuffer frame = ByteBuffer.allocate(12);
+            frame.putInt(8).putInt(Integer.MAX_VALUE).putInt(0);
+            frame.flip();
+            while (frame.hasRemaining()) {
+                peer.write(frame);
+            }
+            Assert.assertTrue(await(() -> {
+                try {
+                    return peer.read(ByteBuffer.allocate(1)) < 0;
+                } catch (IOException e) {
+                    return true;
+                }
+            }));
+
+            try (BridgeSender sender = BridgeSender.builder(local, receiver.getLocalAddress(), CODEC).build()) {
+                local.callSync(new ValueEvent(1));
+                Assert.assertTrue(await(() -> received.get() == 1));
+            }
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static final class ValueEvent extends Event {
+        private static final HandlerList handlers = new HandlerList(false);
+
+        final long value;
+
+        ValueEvent(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+}
@@ -0,0 +1,837 @@
+package me.toddcarter;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.event.EventPriority;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.event.EventPool;
+import me.toddcarter.event.Partitioned;
+import me.toddcarter.event.PoolableEvent;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.eventbus.ProducerType;
+import me.toddcarter.eventbus.RingBufferDispatcher;
+import me.toddcarter.eventbus.ScheduledCall;
+import me.toddcarter.eventbus.WaitStrategy;
+import me.toddcarter.subscription.Subscribe;
+import me.toddcarter.subscription.Subscription;
+import me.toddcarter.timer.HashedWheelTimer;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class EventBusTest {
+
+    @Test
+    public void testIsolatedBuses() {
+        EventBus first = EventBus.builder().name("first").build();
+        EventBus second = EventBus.builder().name("second").build();
+        AtomicInteger calls = new AtomicInteger();
+        first.subscribe(TestEvent.class).handler(event -> calls.incrementAndGet());
+
+        second.callSync(new TestEvent());
+        Events.callSync(new TestEvent());
+        Assert.assertEquals(0, calls.get());
+
+        first.callSync(new TestEvent());
+        Assert.assertEquals(1, calls.get());
+
+        first.unregisterAll();
+        first.callSync(new TestEvent());
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testIsolatedBusWithoutHandlerList() {
+        EventBus bus = EventBus.builder().build();
+        AtomicInteger calls = new AtomicInteger();
+        Subscription<PlainEvent> listener = bus.subscribe(PlainEvent.class).handler(event -> calls.incrementAndGet());
+
+        bus.callSync(new PlainEvent());
+        bus.unregisterListener(listener);
+        bus.callSync(new PlainEvent());
+
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRingBufferMultiProducer() throws InterruptedException {
+        EventBus bus = EventBus.builder().build();
+        AtomicInteger calls = new AtomicInteger();
+        bus.subscribe(TestEvent.class).handler(event -> calls.incrementAndGet());
+        RingBufferDispatcher dispatcher = bus.ringBuffer()
+                .bufferSize(64)
+                .consumers(2)
+                .waitStrategy(WaitStrategy.YIELDING)
+                .build();
+
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    dispatcher.publish(new TestEvent());
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(40000, calls.get());
+    }
+
+    @Test
+    public void testRingBufferOrdering() {
+        EventBus bus = EventBus.builder().build();
+        List<Integer> order = new ArrayList<>();
+        bus.subscribe(TestEvent.class).handler(event -> order.add(event.priority));
+        RingBufferDispatcher dispatcher = bus.ringBuffer()
+                .bufferSize(8)
+                .producerType(ProducerType.SINGLE)
+                .waitStrategy(WaitStrategy.BUSY_SPIN)
+                .build();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            TestEvent event = new TestEvent();
+            event.priority = i;
+            dispatcher.publish(event);
+            expected.add(i);
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(expected, order);
+        try {
+            dispatcher.publish(new TestEvent());
+            Assert.fail("Published to a closed dispatcher");
+        } catch (IllegalStateException expectedException) {
+            // closed
+        }
+    }
+
+    @Test
+    public void testCallAsyncFuture() throws Exception {
+        try (EventBus bus = EventBus.builder().name("async").threads(2).build()) {
+            bus.subscribe(TestEvent.class).handler(event -> event.test = true);
+
+            TestEvent event = bus.callAsync(new TestEvent()).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(event.test);
+
+            List<TestEvent> events = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                events.add(new TestEvent());
+            }
+            bus.callAsyncAll(events).get(5, TimeUnit.SECONDS);
+            for (TestEvent called : events) {
+                Assert.assertTrue(called.test);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchDispatch() throws Exception {
+        EventBus bus = EventBus.builder().name("batch").build();
+        List<Integer> batchSizes = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        bus.subscribe(TestEvent.class).filter(event -> !event.test).batchHandler(batch -> batchSizes.add(batch.size()));
+        bus.subscribe(TestEvent.class).handler(event -> calls.incrementAndGet());
+
+        List<TestEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            TestEvent event = new TestEvent();
+            event.test = i % 2 == 0;
+            events.add(event);
+        }
+        bus.callSyncBatch(events);
+        Assert.assertEquals(1, batchSizes.size());
+        Assert.assertEquals(5, (int) batchSizes.get(0));
+        Assert.assertEquals(10, calls.get());
+
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(2, batchSizes.size());
+        Assert.assertEquals(1, (int) batchSizes.get(1));
+
+        bus.callAsyncBatch(events).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, batchSizes.size());
+        Assert.assertEquals(21, calls.get());
+    }
+
+    @Test
+    public void testBatchExpireAfter() {
+        EventBus bus = EventBus.builder().name("batch-expiry").build();
+        List<Integer> batchSizes = new ArrayList<>();
+        Subscription<TestEvent> subscription = bus.subscribe(TestEvent.class).expireAfter(3).batchHandler(batch -> batchSizes.add(batch.size()));
+
+        List<TestEvent> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(new TestEvent());
+        }
+        bus.callSyncBatch(events);
+        Assert.assertEquals(3, (int) batchSizes.get(0));
+        Assert.assertEquals(3, subscription.getCallCounter());
+        Assert.assertFalse(subscription.isActive());
+    }
+
+    @Test
+    public void testKeyedSubscriptions() {
+        EventBus bus = EventBus.builder().name("keyed").build();
+        Function<TestEvent, Boolean> key = event -> event.test;
+        List<String> calls = new ArrayList<>();
+        bus.subscribe(TestEvent.class).key(key, true).handler(event -> calls.add("true"));
+        bus.subscribe(TestEvent.class).handler(event -> calls.add("unkeyed"));
+        bus.subscribe(TestEvent.class).key(key, false).handler(event -> calls.add("false"));
+        bus.subscribe(TestEvent.class, EventPriority.LOWEST).key(key, false).handler(event -> calls.add("lowest"));
+
+        TestEvent matching = new TestEvent();
+        matching.test = true;
+        bus.callSync(matching);
+        Assert.assertEquals(Arrays.asList("true", "unkeyed"), calls);
+
+        calls.clear();
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(Arrays.asList("lowest", "unkeyed", "false"), calls);
+
+        calls.clear();
+        bus.callSyncBatch(Collections.singletonList(new TestEvent()));
+        Assert.assertEquals(Arrays.asList("lowest", "unkeyed", "false"), calls);
+    }
+
+    @Test
+    public void testKeyedRoutingWithSupertypes() {
+        EventBus bus = EventBus.builder().name("keyed-supertypes").build();
+        AtomicInteger extractions = new AtomicInteger();
+        Function<OrderedEvent, Integer> key = event -> {
+            extractions.incrementAndGet();
+            return event.key;
+        };
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 8; i++) {
+            bus.subscribe(OrderedEvent.class).key(key, i).handler(event -> calls.incrementAndGet());
+        }
+        bus.subscribeAll(Event.class).handler(event -> calls.incrementAndGet());
+
+        // the index extracts the key once, only the matching subscription checks it again
+        bus.callSync(new OrderedEvent(3, 0));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(2, extractions.get());
+
+        extractions.set(0);
+        bus.callSyncBatch(Arrays.asList(new OrderedEvent(1, 0), new OrderedEvent(2, 0)));
+        Assert.assertEquals(6, calls.get());
+        Assert.assertEquals(4, extractions.get());
+    }
+
+    @Test
+    public void testPartitionedAsync() throws Exception {
+        try (EventBus bus = EventBus.builder().name("partitioned").threads(4).stripes(4).build()) {
+            int keys = 8;
+            List<List<Integer>> received = new ArrayList<>();
+            for (int key = 0; key < keys; key++) {
+                received.add(Collections.synchronizedList(new ArrayList<>()));
+            }
+            bus.subscribe(OrderedEvent.class).handler(event -> received.get(event.key).add(event.sequence));
+
+            List<OrderedEvent> events = new ArrayList<>();
+            for (int sequence = 0; sequence < 1000; sequence++) {
+                events.add(new OrderedEvent(sequence % keys, sequence));
+            }
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[events.size()];
+            for (int i = 0; i < events.size(); i++) {
+                futures[i] = bus.callAsync(events.get(i));
+            }
+            CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+            for (int key = 0; key < keys; key++) {
+                List<Integer> sequences = received.get(key);
+                Assert.assertEquals(1000 / keys, sequences.size());
+                for (int i = 1; i < sequences.size(); i++) {
+                    Assert.assertTrue(sequences.get(i - 1) < sequences.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledDispatch() {
+        EventBus bus = EventBus.builder().name("compiled").compiledDispatch().build();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Subscription<TestEvent>> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            subscriptions.add(bus.subscribe(TestEvent.class).handler(event -> calls.incrementAndGet()));
+        }
+        Subscription<TestEvent> filtered = bus.subscribe(TestEvent.class)
+                .filter(event -> true).filter(event -> true).filter(event -> !event.test)
+                .handler(event -> calls.incrementAndGet());
+        bus.subscribe(TestEvent.class).onError((event, t) -> errors.incrementAndGet()).handler(event -> {
+            throw new IllegalStateException();
+        });
+        bus.subscribe(TestEvent.class).onError((event, t) -> {
+            errors.incrementAndGet();
+            throw new IllegalStateException();
+        }).filter(event -> {
+            throw new IllegalStateException();
+        }).handler(event -> calls.incrementAndGet());
+        Subscription<TestEvent> limited = bus.subscribe(TestEvent.class).expireAfter(1).handler(event -> calls.incrementAndGet());
+
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(8, calls.get());
+        Assert.assertEquals(2, errors.get());
+        Assert.assertFalse(limited.isActive());
+
+        TestEvent rejected = new TestEvent();
+        rejected.test = true;
+        bus.callSync(rejected);
+        Assert.assertEquals(14, calls.get());
+        Assert.assertEquals(1, filtered.getCallCounter());
+
+        bus.unregisterListener(subscriptions.get(0));
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(20, calls.get());
+        Assert.assertEquals(6, errors.get());
+
+        subscriptions.get(1).expire();
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(25, calls.get());
+        Assert.assertEquals(3, subscriptions.get(1).getCallCounter());
+
+        bus.setMetricsEnabled(true);
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(30, calls.get());
+        Assert.assertEquals(1, subscriptions.get(2).getMetrics().snapshot().getInvocations());
+    }
+
+    @Test
+    public void testParallelFanOut() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EventBus bus = EventBus.builder().name("fan-out").fanOutPool(pool).build();
+            bus.setParallel(EventPriority.MONITOR, true);
+            CountDownLatch started = new CountDownLatch(4);
+            AtomicInteger concurrent = new AtomicInteger();
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            bus.subscribe(TestEvent.class, EventPriority.LOWEST).handler(event -> order.add("lowest"));
+            for (int i = 0; i < 4; i++) {
+                bus.subscribe(TestEvent.class, EventPriority.MONITOR).handler(event -> {
+                    started.countDown();
+                    try {
+                        // only completes if every monitor listener runs at the same time
+                        if (started.await(5, TimeUnit.SECONDS)) {
+                            concurrent.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    order.add("monitor");
+                });
+            }
+            bus.subscribe(TestEvent.class, EventPriority.HIGHEST).handler(event -> order.add("highest"));
+
+            bus.callSync(new TestEvent());
+            Assert.assertEquals(4, concurrent.get());
+            Assert.assertEquals(Arrays.asList("lowest", "highest", "monitor", "monitor", "monitor", "monitor"), order);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelFanOutBatch() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            EventBus bus = EventBus.builder().name("fan-out-batch").fanOutPool(pool).build();
+            bus.setParallel(EventPriority.MONITOR, true);
+            CountDownLatch started = new CountDownLatch(2);
+            AtomicInteger concurrent = new AtomicInteger();
+            List<List<Integer>> received = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                List<Integer> sequences = Collections.synchronizedList(new ArrayList<>());
+                received.add(sequences);
+                bus.subscribe(OrderedEvent.class, EventPriority.MONITOR).handler(event -> {
+                    if (event.sequence == 0) {
+                        started.countDown();
+                        try {
+                            // only completes if both monitor listeners run at the same time
+                            if (started.await(5, TimeUnit.SECONDS)) {
+                                concurrent.incrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    sequences.add(event.sequence);
+                });
+            }
+
+            bus.callSyncBatch(Arrays.asList(new OrderedEvent(0, 0), new OrderedEvent(0, 1), new OrderedEvent(0, 2)));
+            Assert.assertEquals(2, concurrent.get());
+            for (List<Integer> sequences : received) {
+                Assert.assertEquals(Arrays.asList(0, 1, 2), sequences);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        try (EventBus bus = EventBus.builder().name("coalesce").threads(1).build()) {
+            Map<Integer, Integer> latest = new ConcurrentHashMap<>();
+            AtomicInteger calls = new AtomicInteger();
+            CountDownLatch delivered = new CountDownLatch(2);
+            bus.subscribe(OrderedEvent.class).coalesce(event -> event.key, 50, TimeUnit.MILLISECONDS).handler(event -> {
+                latest.put(event.key, event.sequence);
+                calls.incrementAndGet();
+                delivered.countDown();
+            });
+
+            for (int sequence = 0; sequence < 100; sequence++) {
+                bus.callSync(new OrderedEvent(sequence % 2, sequence));
+            }
+            Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            Assert.assertEquals(2, calls.get());
+            Assert.assertEquals(98, (int) latest.get(0));
+            Assert.assertEquals(99, (int) latest.get(1));
+        }
+    }
+
+    @Test
+    public void testCoalesceUnregistered() throws Exception {
+        try (EventBus bus = EventBus.builder().name("coalesce-unregistered").threads(1).build()) {
+            AtomicInteger calls = new AtomicInteger();
+            Subscription<OrderedEvent> subscription = bus.subscribe(OrderedEvent.class).debounce(50, TimeUnit.MILLISECONDS).handler(event -> calls.incrementAndGet());
+
+            bus.callSync(new OrderedEvent(0, 0));
+            bus.unregisterListener(subscription);
+            Thread.sleep(200);
+            Assert.assertEquals(0, calls.get());
+        }
+    }
+
+    @Test
+    public void testCoalescePooledEvents() throws Exception {
+        try (EventBus bus = EventBus.builder().name("coalesce-pooled").threads(1).build()) {
+            EventPool<PooledEvent> pool = new EventPool<>(PooledEvent::new, 16);
+            AtomicLong received = new AtomicLong();
+            CountDownLatch delivered = new CountDownLatch(1);
+            bus.subscribe(PooledEvent.class).debounce(50, TimeUnit.MILLISECONDS).handler(event -> {
+                received.set(event.value);
+                delivered.countDown();
+            });
+
+            PooledEvent replaced = pool.acquire();
+            replaced.value = 1;
+            bus.callSync(replaced);
+            Assert.assertEquals(1, replaced.getReferenceCount());
+            PooledEvent latest = pool.acquire();
+            latest.value = 2;
+            bus.callSync(latest);
+            Assert.assertEquals(0, replaced.getReferenceCount());
+            Assert.assertEquals(1, latest.getReferenceCount());
+
+            Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2, received.get());
+            Thread.sleep(50);
+            Assert.assertEquals(0, latest.getReferenceCount());
+        }
+    }
+
+    @Test
+    public void testDebounce() throws Exception {
+        try (EventBus bus = EventBus.builder().name("debounce").threads(1).build()) {
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch delivered = new CountDownLatch(1);
+            // the window is far longer than the calls take, so a slow scheduler does not close it early
+            bus.subscribe(OrderedEvent.class).debounce(1, TimeUnit.SECONDS).handler(event -> {
+                received.add(event.sequence);
+                delivered.countDown();
+            });
+
+            for (int sequence = 0; sequence < 5; sequence++) {
+                bus.callSync(new OrderedEvent(0, sequence));
+                Thread.sleep(5);
+            }
+            Assert.assertTrue(received.isEmpty());
+            Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            Thread.sleep(150);
+            Assert.assertEquals(Collections.singletonList(4), received);
+        }
+    }
+
+    @Test
+    public void testPooledDispatchIsAllocationFree() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+        EventBus bus = EventBus.builder().name("pooled").build();
+        EventPool<PooledEvent> pool = new EventPool<>(PooledEvent::new, 16);
+        AtomicLong sum = new AtomicLong();
+        bus.subscribe(PooledEvent.class).filter(event -> event.value >= 0).handler(event -> sum.addAndGet(event.value));
+        bus.subscribe(PooledEvent.class, EventPriority.MONITOR).expireAfter(Long.MAX_VALUE - 1).handler(event -> sum.incrementAndGet());
+
+        PooledEvent first = pool.acquire();
+        bus.callSync(first);
+        Assert.assertEquals(0, first.getReferenceCount());
+        Assert.assertSame(first, pool.acquire());
+
+        for (int i = 0; i < 100000; i++) {
+            PooledEvent event = pool.acquire();
+            event.value = i;
+            bus.callSync(event);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            PooledEvent event = pool.acquire();
+            event.value = i;
+            bus.callSync(event);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        // a fixed slack for the counter itself, a single small allocation on every 1000th call is already over it
+        Assert.assertTrue("Dispatch allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void testHasListeners() throws Exception {
+        EventBus bus = EventBus.builder().name("interest").build();
+        AtomicInteger built = new AtomicInteger();
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+        Assert.assertFalse(bus.callSync(TestEvent.class, () -> {
+            built.incrementAndGet();
+            return new TestEvent();
+        }));
+        Assert.assertNull(bus.callAsync(TestEvent.class, TestEvent::new).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, built.get());
+
+        Subscription<Event> supertype = bus.subscribeAll(Event.class).handler(event -> {});
+        Assert.assertTrue(bus.hasListeners(TestEvent.class));
+        bus.unregisterListener(supertype);
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+
+        Subscription<TestEvent> subscription = bus.subscribe(TestEvent.class).handler(event -> event.test = true);
+        Assert.assertTrue(bus.hasListeners(TestEvent.class));
+        Assert.assertTrue(bus.callSync(TestEvent.class, () -> {
+            built.incrementAndGet();
+            return new TestEvent();
+        }));
+        Assert.assertTrue(bus.callAsync(TestEvent.class, TestEvent::new).get(5, TimeUnit.SECONDS).test);
+        Assert.assertEquals(1, built.get());
+
+        bus.unregisterListener(subscription);
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+    }
+
+    @Test
+    public void testOwnerGroups() {
+        EventBus bus = EventBus.builder().name("owners").build();
+        Object plugin = new Object();
+        AtomicInteger calls = new AtomicInteger();
+        List<Subscription<?>> group = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            group.add(bus.subscribe(TestEvent.class).owner(plugin).build(event -> calls.incrementAndGet()));
+        }
+        group.add(bus.subscribe(OrderedEvent.class).owner(plugin).build(event -> calls.incrementAndGet()));
+        bus.registerAll(group);
+        Subscription<TestEvent> other = bus.subscribe(TestEvent.class).handler(event -> calls.incrementAndGet());
+
+        bus.callSync(new TestEvent());
+        bus.callSync(new OrderedEvent(0, 0));
+        Assert.assertEquals(5, calls.get());
+
+        Assert.assertEquals(4, bus.unregisterOwner(plugin));
+        Assert.assertEquals(0, bus.unregisterOwner(plugin));
+        for (Subscription<?> subscription : group) {
+            Assert.assertNull(subscription.getHandlerList());
+        }
+        Assert.assertFalse(bus.hasListeners(OrderedEvent.class));
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(6, calls.get());
+        bus.unregisterListener(other);
+    }
+
+    @Test
+    public void testRegisterAllIsAllOrNothing() {
+        EventBus bus = EventBus.builder().name("all-or-nothing").build();
+        Object plugin = new Object();
+        Subscription<OrderedEvent> registered = bus.subscribe(OrderedEvent.class).owner(plugin).handler(event -> {
+        });
+        List<Subscription<?>> group = new ArrayList<>();
+        group.add(bus.subscribe(TestEvent.class).owner(plugin).build(event -> {
+        }));
+        group.add(registered);
+        try {
+            bus.registerAll(group);
+            Assert.fail("Registered a listener twice");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertNull(group.get(0).getHandlerList());
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+
+        Subscription<TestEvent> fresh = bus.subscribe(TestEvent.class).build(event -> {
+        });
+        try {
+            bus.registerAll(Arrays.asList(fresh, fresh));
+            Assert.fail("Registered a listener twice");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+        Assert.assertEquals(1, bus.unregisterOwner(plugin));
+    }
+
+    @Test
+    public void testAnnotatedListeners() {
+        EventBus bus = EventBus.builder().name("annotated").build();
+        PublicListener listener = new PublicListener();
+        PrivateListener hidden = new PrivateListener();
+        bus.register(listener);
+        bus.register(hidden);
+
+        TestCancellableEvent cancelled = new TestCancellableEvent();
+        cancelled.setCancelled(true);
+        bus.callSync(cancelled);
+        bus.callSync(new TestCancellableEvent());
+        Assert.assertEquals("normal,cancellable,normal,high,", listener.calls.toString());
+        Assert.assertEquals(2, hidden.calls.get());
+
+        bus.unregister(listener);
+        bus.callSync(new TestCancellableEvent());
+        Assert.assertEquals("normal,cancellable,normal,high,", listener.calls.toString());
+        Assert.assertEquals(3, hidden.calls.get());
+        bus.unregister(hidden);
+        Assert.assertFalse(bus.hasListeners(TestCancellableEvent.class));
+
+        try {
+            bus.register(new Object() {
+                @Subscribe
+                public void invalid(String value) {
+                }
+            });
+            Assert.fail("Registered a listener without an event parameter");
+        } catch (IllegalArgumentException expected) {
+        }
+        Subscription<TestEvent> subscription = bus.subscribe(TestEvent.class).handler(event -> {
+        });
+        try {
+            bus.unregister(subscription);
+            Assert.fail("Unregistered an object without listener methods");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            bus.register(subscription);
+            Assert.fail("Registered an object without listener methods");
+        } catch (IllegalArgumentException expected) {
+        }
+        Assert.assertTrue(subscription.isActive());
+        bus.unregisterListener(subscription);
+    }
+
+    @Test
+    public void testOwnersAreComparedByIdentity() {
+        EventBus bus = EventBus.builder().name("identity").build();
+        AtomicInteger calls = new AtomicInteger();
+        EqualListener first = new EqualListener(calls);
+        EqualListener second = new EqualListener(calls);
+        Assert.assertEquals(first, second);
+        bus.register(first);
+        bus.register(second);
+
+        bus.unregister(first);
+        bus.callSync(new TestEvent());
+        Assert.assertEquals(1, calls.get());
+        bus.unregister(second);
+        Assert.assertFalse(bus.hasListeners(TestEvent.class));
+    }
+
+    @Test
+    public void testScheduledCalls() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64, Executors.defaultThreadFactory());
+        EventBus bus = EventBus.builder().name("scheduled").timer(timer).build();
+        AtomicInteger later = new AtomicInteger();
+        AtomicInteger periodic = new AtomicInteger();
+        bus.subscribe(TestEvent.class).handler(event -> later.incrementAndGet());
+        bus.subscribe(OrderedEvent.class).handler(event -> periodic.incrementAndGet());
+
+        for (int i = 0; i < 100; i++) {
+            bus.callLater(new TestEvent(), 5, TimeUnit.MILLISECONDS);
+        }
+        ScheduledCall cancelled = bus.callLater(new TestEvent(), 5, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+
+        CountDownLatch ticks = new CountDownLatch(5);
+        ScheduledCall every = bus.callEvery(() -> {
+            ticks.countDown();
+            return new OrderedEvent(0, 0);
+        }, 2, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(every.cancel());
+        Thread.sleep(50);
+        int calls = periodic.get();
+        Thread.sleep(50);
+
+        Assert.assertEquals(calls, periodic.get());
+        Assert.assertEquals(100, later.get());
+        Assert.assertTrue(cancelled.isCancelled());
+        timer.stop();
+        bus.unregisterAll();
+    }
+
+    @Test
+    public void testCloseCancelsScheduledCalls() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64, Executors.defaultThreadFactory());
+        try {
+            EventBus bus = EventBus.builder().name("closed-schedule").threads(1).timer(timer).build();
+            AtomicInteger supplied = new AtomicInteger();
+            CountDownLatch ticks = new CountDownLatch(2);
+            ScheduledCall every = bus.callEvery(() -> {
+                supplied.incrementAndGet();
+                ticks.countDown();
+                return new TestEvent();
+            }, 2, TimeUnit.MILLISECONDS);
+            ScheduledCall later = bus.callLater(new TestEvent(), 1, TimeUnit.HOURS);
+            Assert.assertTrue(ticks.await(5, TimeUnit.SECONDS));
+
+            bus.close();
+            Assert.assertTrue(every.isCancelled());
+            Assert.assertTrue(later.isCancelled());
+            Thread.sleep(20);
+            int calls = supplied.get();
+            Thread.sleep(50);
+            Assert.assertEquals(calls, supplied.get());
+            try {
+                bus.callLater(new TestEvent(), 1, TimeUnit.MILLISECONDS);
+                Assert.fail("Scheduled a call on a closed bus");
+            } catch (RejectedExecutionException expected) {
+            }
+
+            // an executor shut down by its owner cancels the calls instead of queueing them forever
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            EventBus external = EventBus.builder().name("rejected-schedule").executor(executor).timer(timer).build();
+            executor.shutdown();
+            ScheduledCall rejected = external.callEvery(TestEvent::new, 2, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!rejected.isCancelled() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Assert.assertTrue(rejected.isCancelled());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    public static final class PublicListener {
+        final StringBuilder calls = new StringBuilder();
+
+        @Subscribe
+        public void normal(TestCancellableEvent event) {
+            calls.append("normal,");
+        }
+
+        @Subscribe(priority = EventPriority.HIGH, ignoreCancelled = true)
+        public void high(TestCancellableEvent event) {
+            calls.append("high,");
+        }
+
+        @Subscribe(priority = EventPriority.LOW, ignoreCancelled = true)
+        public void cancellable(TestCancellableEvent event) {
+            calls.append("cancellable,");
+        }
+    }
+
+    public static final class EqualListener {
+        private final AtomicInteger calls;
+
+        EqualListener(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Subscribe
+        public void handle(TestEvent event) {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof EqualListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+
+    private static final class PrivateListener {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Subscribe
+        private void handle(TestCancellableEvent event) {
+            calls.incrementAndGet();
+        }
+    }
+
+    private static final class PooledEvent extends PoolableEvent {
+        private static final HandlerList handlers = new HandlerList(false);
+
+        long value;
+
+        @Override
+        protected void reset() {
+            value = 0;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+
+    private static final class OrderedEvent extends Event implements Partitioned {
+        private static final HandlerList handlers = new HandlerList(false);
+
+        final int key;
+        final int sequence;
+
+        OrderedEvent(int key, int sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Object getPartitionKey() {
+            return key;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+
+    private static final class PlainEvent extends Event {
+        @Override
+        public HandlerList getHandlers() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package me.toddcarter;
 
+import me.toddcarter.event.Cancellable;
+import me.toddcarter.event.Event;
 import me.toddcarter.event.EventPriority;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.metrics.MetricsSnapshot;
+import me.toddcarter.metrics.SubscriptionMetrics;
 import me.toddcarter.subscription.Subscription;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EventTest {
 
@@ -38,9 +51,9 @@ public class EventTest {
     }
 
     @Test
-    public void testCallAsync() {
+    public void testCallAsync() throws Exception {
         TestEvent event = new TestEvent();
-        Events.callAsync(event);
+        Assert.assertSame(event, Events.callAsync(event).get(5, TimeUnit.SECONDS));
     }
 
     @Test
@@ -125,6 +138,233 @@ public class EventTest {
         Assert.assertEquals("Test Event should have been fired 6 times", 6, event.priority);
     }
 
+    @Test
+    public void testExpireAfterConcurrent() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        Events.subscribe(TestEvent.class)
+                .expireAfter(100)
+                .handler(event -> calls.incrementAndGet());
+
+        runConcurrently(8, 1000, () -> Events.callSync(new TestEvent()));
+
+        Assert.assertEquals(100, calls.get());
+    }
+
+    @Test
+    public void testSerialized() throws InterruptedException {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        Subscription<TestEvent> listener = Events.subscribe(TestEvent.class)
+                .serialized()
+                .handler(event -> {
+                    if (inside.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    Thread.yield();
+                    inside.decrementAndGet();
+                });
+
+        runConcurrently(8, 1000, () -> Events.callSync(new TestEvent()));
+        Events.unregisterListener(listener);
+
+        Assert.assertFalse("Serialized subscriber was executed concurrently", overlapped.get());
+        Assert.assertEquals(8000, listener.getCallCounter());
+    }
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        HandlerList handlerList = TestCancellableEvent.getHandlerList();
+        Subscription<?>[] before = handlerList.getRegisteredListeners();
 
+        Subscription<TestCancellableEvent> listener = Events.subscribe(TestCancellableEvent.class, EventPriority.HIGH).handler(event -> {});
+        Subscription<?>[] registered = handlerList.getRegisteredListeners();
+        Events.unregisterListener(listener);
+
+        Assert.assertEquals(before.length + 1, registered.length);
+        Assert.assertTrue(Arrays.asList(registered).contains(listener));
+        Assert.assertArrayEquals(before, handlerList.getRegisteredListeners());
+    }
+
+    @Test
+    public void testMassExpiry() {
+        HandlerList handlerList = TestEvent.getHandlerList();
+        int before = handlerList.getRegisteredListeners().length;
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            Events.subscribe(TestEvent.class).expireAfter(1).handler(event -> calls.incrementAndGet());
+        }
+
+        Events.callSync(new TestEvent());
+        Events.callSync(new TestEvent());
+
+        Assert.assertEquals(1000, calls.get());
+        Assert.assertEquals(before, handlerList.getRegisteredListeners().length);
+    }
+
+    @Test
+    public void testExpireAfterTime() throws InterruptedException {
+        HandlerList handlerList = TestCancellableEvent.getHandlerList();
+        Subscription<TestCancellableEvent> listener = Events.subscribe(TestCancellableEvent.class)
+                .expireAfter(50, TimeUnit.MILLISECONDS)
+                .handler(event -> {});
+        Assert.assertTrue(listener.isActive());
+
+        Thread.sleep(500);
+
+        Assert.assertFalse("Subscriber did not expire", listener.isActive());
+        Assert.assertFalse("Subscriber was not removed", Arrays.asList(handlerList.getRegisteredListeners()).contains(listener));
+    }
+
+    @Test
+    public void testRateLimit() {
+        AtomicInteger calls = new AtomicInteger();
+        Subscription<TestCancellableEvent> listener = Events.subscribe(TestCancellableEvent.class)
+                .rateLimit(10, 1, TimeUnit.HOURS)
+                .handler(event -> calls.incrementAndGet());
+        try {
+            for (int i = 0; i < 100; i++) {
+                Events.callSync(new TestCancellableEvent());
+            }
+            Assert.assertEquals(10, calls.get());
+            Assert.assertEquals(90, listener.getThrottleCounter());
+        } finally {
+            Events.unregisterListener(listener);
+        }
+    }
 
+    @Test
+    public void testSample() {
+        AtomicInteger calls = new AtomicInteger();
+        Subscription<TestCancellableEvent> listener = Events.subscribe(TestCancellableEvent.class)
+                .sample(0.25)
+                .handler(event -> calls.incrementAndGet());
+        try {
+            for (int i = 0; i < 10000; i++) {
+                Events.callSync(new TestCancellableEvent());
+            }
+            Assert.assertTrue(calls.get() > 2000 && calls.get() < 3000);
+            Assert.assertEquals(10000 - calls.get(), listener.getThrottleCounter());
+        } finally {
+            Events.unregisterListener(listener);
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        Subscription<TestCancellableEvent> listener = Events.subscribe(TestCancellableEvent.class)
+                .filter(event -> !event.isCancelled())
+                .onError((event, throwable) -> {})
+                .handler(event -> {
+                    throw new IllegalStateException();
+                });
+        Assert.assertNull(listener.getMetrics());
+
+        Events.setMetricsEnabled(true);
+        try {
+            Events.callSync(new TestCancellableEvent());
+            TestCancellableEvent cancelled = new TestCancellableEvent();
+            cancelled.setCancelled(true);
+            Events.callSync(cancelled);
+
+            MetricsSnapshot snapshot = Events.getMetrics();
+            SubscriptionMetrics.Snapshot metrics = snapshot.getSubscriptionMetrics().get(listener);
+            Assert.assertEquals(1, metrics.getInvocations());
+            Assert.assertEquals(1, metrics.getFilterRejections());
+            Assert.assertEquals(1, metrics.getExceptions());
+            Assert.assertEquals(1, metrics.getLatency().getCount());
+            Assert.assertEquals(2, snapshot.getEventMetrics().get(TestCancellableEvent.class).getDispatches());
+        } finally {
+            Events.setMetricsEnabled(false);
+            Events.unregisterListener(listener);
+        }
+        Assert.assertNull(listener.getMetrics());
+    }
+
+    @Test
+    public void testSubscribeAll() {
+        List<String> calls = new ArrayList<>();
+        Subscription<Event> all = Events.subscribeAll(Event.class, EventPriority.MONITOR).handler(event -> calls.add("all"));
+        Subscription<Cancellable> cancellable = Events.subscribeAll(Cancellable.class, EventPriority.LOW).handler(event -> calls.add("cancellable"));
+        Subscription<TestCancellableEvent> exact = Events.subscribe(TestCancellableEvent.class).handler(event -> calls.add("exact"));
+
+        Events.callSync(new TestCancellableEvent());
+        Assert.assertEquals(Arrays.asList("cancellable", "exact", "all"), calls);
+
+        calls.clear();
+        Events.callSync(new TestEvent());
+        Assert.assertEquals(Collections.singletonList("all"), calls);
+
+        Events.unregisterListener(all);
+        Events.unregisterListener(cancellable);
+        Events.unregisterListener(exact);
+        calls.clear();
+        Events.callSync(new TestCancellableEvent());
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testStaticUnregisterReachesSupertypes() {
+        List<String> calls = new ArrayList<>();
+        Subscription<Cancellable> cancellable = Events.subscribeAll(Cancellable.class).handler(event -> calls.add("cancellable"));
+
+        HandlerList.unregisterAll(cancellable);
+        Events.callSync(new TestCancellableEvent());
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testDefaultBusesShareSubscriptions() {
+        EventBus first = new EventBus();
+        EventBus second = new EventBus();
+        Object owner = new Object();
+        List<String> calls = new ArrayList<>();
+        first.subscribe(TestCancellableEvent.class).owner(owner).handler(event -> calls.add("exact"));
+        first.subscribeAll(Cancellable.class).owner(owner).handler(event -> calls.add("supertype"));
+
+        second.callSync(new TestCancellableEvent());
+        Assert.assertEquals(Arrays.asList("exact", "supertype"), calls);
+        Assert.assertEquals(2, second.unregisterOwner(owner));
+        Assert.assertEquals(0, first.unregisterOwner(owner));
+        Events.callSync(new TestCancellableEvent());
+        Assert.assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testMissingHandlerList() {
+        try {
+            Events.subscribe(MissingHandlerListEvent.class).handler(event -> {});
+            Assert.fail("Subscribed to an event without a static getHandlerList method");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains(MissingHandlerListEvent.class.getName()));
+        }
+    }
+
+    private static final class MissingHandlerListEvent extends Event {
+        @Override
+        public HandlerList getHandlers() {
+            return null;
+        }
+    }
+
+    private static void runConcurrently(int threads, int iterations, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < iterations; j++) {
+                    task.run();
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
 }
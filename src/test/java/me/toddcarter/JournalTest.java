@@ -0,0 +1,154 @@
+package me.toddcarter;
+
+import me.toddcarter.event.Event;
+import me.toddcarter.event.HandlerList;
+import me.toddcarter.eventbus.EventBus;
+import me.toddcarter.journal.Durability;
+import me.toddcarter.journal.EventSerializer;
+import me.toddcarter.journal.Journal;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class JournalTest {
+
+    private static final EventSerializer<ValueEvent> SERIALIZER = new EventSerializer<ValueEvent>() {
+        @Override
+        public byte[] serialize(ValueEvent event) {
+            return ByteBuffer.allocate(8).putLong(event.value).array();
+        }
+
+        @Override
+        public ValueEvent deserialize(byte[] data) {
+            return new ValueEvent(ByteBuffer.wrap(data).getLong());
+        }
+    };
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReplay() {
+        Journal journal = open(Durability.ASYNC);
+        EventBus bus = EventBus.builder().name("journaled").journal(journal).build();
+        for (long value = 0; value < 100; value++) {
+            bus.callSync(new ValueEvent(value));
+        }
+        bus.callSync(new UnserializedEvent());
+        Assert.assertEquals(100, journal.getNextSequence());
+
+        List<Long> replayed = new ArrayList<>();
+        bus.subscribe(ValueEvent.class).handler(event -> replayed.add(event.value));
+        Assert.assertEquals(10, journal.replay(bus, 40, 49));
+        Assert.assertEquals(10, replayed.size());
+        Assert.assertEquals(40L, (long) replayed.get(0));
+        Assert.assertEquals(49L, (long) replayed.get(9));
+        // replayed events are not journaled again
+        Assert.assertEquals(100, journal.getNextSequence());
+
+        replayed.clear();
+        Assert.assertEquals(100, journal.replayTimeRange(bus, 0, Long.MAX_VALUE));
+        Assert.assertEquals(100, replayed.size());
+        journal.close();
+    }
+
+    @Test
+    public void testSegmentsAndRecovery() {
+        Journal journal = open(Durability.SYNC);
+        for (long value = 0; value < 50; value++) {
+            journal.append(new ValueEvent(value));
+        }
+        journal.close();
+
+        Journal reopened = open(Durability.NONE);
+        Assert.assertEquals(50, reopened.getNextSequence());
+        reopened.append(new ValueEvent(50));
+
+        EventBus bus = EventBus.builder().name("replay").build();
+        List<Long> replayed = new ArrayList<>();
+        bus.subscribe(ValueEvent.class).handler(event -> replayed.add(event.value));
+        Assert.assertEquals(51, reopened.replay(bus, 0, Long.MAX_VALUE));
+        for (int i = 0; i < replayed.size(); i++) {
+            Assert.assertEquals(i, (long) replayed.get(i));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testCorruptRecordIsNotReplayed() throws IOException {
+        Journal journal = open(Durability.SYNC);
+        for (long value = 0; value < 10; value++) {
+            journal.append(new ValueEvent(value));
+        }
+        journal.close();
+
+        // corrupt the checksum of the second record of the first segment, which is no longer the last segment
+        Path segment = directory.resolve(String.format("%020d.journal", 0));
+        byte[] data = Files.readAllBytes(segment);
+        data[36 + 4] ^= 1;
+        Files.write(segment, data);
+
+        Journal reopened = open(Durability.NONE);
+        EventBus bus = EventBus.builder().name("corrupt").build();
+        List<Long> replayed = new ArrayList<>();
+        bus.subscribe(ValueEvent.class).handler(event -> replayed.add(event.value));
+        Assert.assertEquals(4, reopened.replay(bus, 0, Long.MAX_VALUE));
+        Assert.assertEquals(0L, (long) replayed.get(0));
+        Assert.assertEquals(7L, (long) replayed.get(1));
+        reopened.close();
+    }
+
+    private Journal open(Durability durability) {
+        // small segments so the tests roll over several files
+        return Journal.builder(directory)
+                .segmentSize(256)
+                .durability(durability)
+                .serializer(1, ValueEvent.class, SERIALIZER)
+                .build();
+    }
+
+    private static final class ValueEvent extends Event {
+        private static final HandlerList handlers = new HandlerList(false);
+
+        final long value;
+
+        ValueEvent(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+
+    private static final class UnserializedEvent extends Event {
+        private static final HandlerList handlers = new HandlerList(false);
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+    }
+}
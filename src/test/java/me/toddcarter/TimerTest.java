@@ -0,0 +1,41 @@
+package me.toddcarter;
+
+import me.toddcarter.timer.HashedWheelTimer;
+import me.toddcarter.timer.Timeout;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerTest {
+
+    @Test
+    public void testTimeoutExpires() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8, Executors.defaultThreadFactory());
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            // some timeouts wrap around the wheel more than once
+            timer.newTimeout(timeout -> latch.countDown(), i, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        timer.stop();
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8, Executors.defaultThreadFactory());
+        AtomicInteger runs = new AtomicInteger();
+        Timeout timeout = timer.newTimeout(t -> runs.incrementAndGet(), 20, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+
+        Thread.sleep(100);
+
+        Assert.assertEquals(0, runs.get());
+        Assert.assertTrue(timeout.isCancelled());
+        timer.stop();
+    }
+}